@@ -0,0 +1,46 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Присваивание значений переменным: выражением с присваиванием и через setVariable
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssignmentBenchmark {
+
+    private static final String ASSIGNMENT = "y = x * 2 + a / b";
+
+    private ExpressionSolver solver;
+    private CompiledExpression compiled;
+    private double value;
+
+    @Setup
+    public void setup() throws ExpressionException {
+        solver = BenchmarkExpressions.solver();
+        compiled = solver.compile(ASSIGNMENT);
+    }
+
+    @Benchmark
+    public double evaluateString() throws ExpressionException {
+        return solver.evaluate(ASSIGNMENT);
+    }
+
+    @Benchmark
+    public double evaluateCompiled() throws ExpressionException {
+        return compiled.evaluate();
+    }
+
+    @Benchmark
+    public boolean setVariable() {
+        value += 0.5;
+        return solver.setVariable("x", value);
+    }
+}
@@ -0,0 +1,51 @@
+package com.ole.expression;
+
+/**
+ * Набор выражений, на которых измеряется производительность решателя
+ */
+final class BenchmarkExpressions {
+
+    private BenchmarkExpressions() {
+    }
+
+    /**
+     * Названия переменных, которые использует выражение variables
+     */
+    static final String[] VARIABLES = {"a", "b", "c", "d", "e", "f", "g", "h", "i", "j", "k", "l", "m", "n", "o", "p"};
+
+    /**
+     * Возвращает выражение по названию вида
+     * @param kind short, nested, functions или variables
+     * @return Строка выражения
+     */
+    static String get(String kind) {
+        return switch (kind) {
+            case "short" -> "x * 2 + 1";
+            case "nested" -> nested(16);
+            case "functions" -> "sin(x) + cos(x) * tan(x / 2) - log(x + 1) / log10(x + 2) + sin(cos(PI / 3))";
+            case "variables" -> "a * b + c * d - e / f + g * h - i / j + k * l - m / n + o * p";
+            default -> throw new IllegalArgumentException(kind);
+        };
+    }
+
+    /**
+     * Создаёт решатель со всеми переменными, которые используют выражения набора
+     * @return Решатель
+     */
+    static ExpressionSolver solver() {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("x", 0.7);
+        for (int i = 0; i < VARIABLES.length; i++)
+            solver.setVariable(VARIABLES[i], i + 1.5);
+        return solver;
+    }
+
+    private static String nested(int depth) {
+        StringBuilder expression = new StringBuilder("x");
+        for (int i = 0; i < depth; i++) {
+            char operator = "+-*/".charAt(i % 4);
+            expression.insert(0, '(').append(' ').append(operator).append(' ').append(i + 2).append(')');
+        }
+        return expression.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вычисление выражений разными путями: через строку с кэшем и без него,
+ * через скомпилированное выражение и через сгенерированный класс
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluateBenchmark {
+
+    @Param({"short", "nested", "functions", "variables"})
+    public String kind;
+
+    private String source;
+    private ExpressionSolver cached;
+    private ExpressionSolver uncached;
+    private CompiledExpression compiled;
+    private CompiledExpression jitted;
+
+    @Setup
+    public void setup() throws ExpressionException {
+        source = BenchmarkExpressions.get(kind);
+        cached = BenchmarkExpressions.solver();
+        uncached = BenchmarkExpressions.solver();
+        uncached.setCacheCapacity(0);
+        compiled = cached.compile(source);
+
+        ExpressionSolver jitSolver = BenchmarkExpressions.solver();
+        jitSolver.setJitThreshold(1);
+        jitted = jitSolver.compile(source);
+        jitted.evaluate();
+    }
+
+    @Benchmark
+    public double evaluateString() throws ExpressionException {
+        return cached.evaluate(source);
+    }
+
+    @Benchmark
+    public double evaluateStringWithoutCache() throws ExpressionException {
+        return uncached.evaluate(source);
+    }
+
+    @Benchmark
+    public double evaluateCompiled() throws ExpressionException {
+        return compiled.evaluate();
+    }
+
+    @Benchmark
+    public double evaluateBytecode() throws ExpressionException {
+        return jitted.evaluate();
+    }
+}
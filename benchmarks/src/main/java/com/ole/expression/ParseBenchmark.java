@@ -0,0 +1,51 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отдельные этапы разбора: разбиение на токены, перевод в обратную польскую запись и полная компиляция
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"short", "nested", "functions", "variables"})
+    public String kind;
+
+    private String source;
+    private ExpressionSolver solver;
+
+    /**
+     * Токены источника для замера перевода в обратную польскую запись без разбиения на токены
+     */
+    private Tokens tokens;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkExpressions.get(kind);
+        solver = BenchmarkExpressions.solver();
+        tokens = Tokens.scan(source, 0, source.length());
+    }
+
+    @Benchmark
+    public Tokens scan() {
+        return Tokens.scan(source, 0, source.length());
+    }
+
+    @Benchmark
+    public int[] reversePolishNotation() throws ExpressionException {
+        return solver.convertToReversePolishNotation(tokens);
+    }
+
+    @Benchmark
+    public CompiledExpression compile() throws ExpressionException {
+        return solver.compile(source);
+    }
+}
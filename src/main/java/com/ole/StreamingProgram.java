@@ -0,0 +1,207 @@
+package com.ole;
+
+import com.ole.expression.ExpressionSolver;
+import com.ole.expression.exceptions.ExpressionException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Потоковое вычисление файла выражений.
+ * Каждая строка входного файла вычисляется как выражение, в выходной файл записывается по одной строке на каждую входную:
+ * значение выражения, сообщение об ошибке или пустая строка для пустой входной строки.
+ * Файл читается через буфер фиксированного размера, поэтому расход памяти не зависит от размера файла.
+ */
+public class StreamingProgram {
+
+    /**
+     * Размер буферов чтения
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Использование: StreamingProgram <входной файл> <выходной файл>");
+            return;
+        }
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setFunction("round", Program::round);
+        try {
+            long lines = process(Path.of(args[0]), Path.of(args[1]), expressionSolver);
+            System.out.println("Обработано строк: " + lines);
+        } catch (IOException ex) {
+            System.out.println("Ошибка ввода-вывода: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Вычисляет выражения из входного файла построчно и записывает результаты в выходной файл.
+     * Строки передаются решателю без создания строк, значения записываются без промежуточных строк.
+     * Буфер символов увеличивается только для строк длиннее буфера.
+     * @param input Входной файл в кодировке UTF-8
+     * @param output Выходной файл, который будет перезаписан
+     * @param expressionSolver Решатель, в котором вычисляются выражения. Присваивания видны в следующих строках.
+     * @return Количество обработанных строк
+     * @throws IOException Выбрасывается при ошибках чтения, записи или некорректной кодировке входного файла
+     */
+    public static long process(Path input, Path output, ExpressionSolver expressionSolver) throws IOException {
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ);
+             Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+            LineWriter lineWriter = new LineWriter(expressionSolver, writer);
+
+            while (true) {
+                boolean endOfInput = channel.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result = decoder.decode(bytes, chars, endOfInput);
+                bytes.compact();
+                if (result.isError())
+                    result.throwException();
+                boolean finished = endOfInput && result.isUnderflow() && decoder.flush(chars).isUnderflow();
+
+                chars.flip();
+                lineWriter.writeLines(chars, finished);
+                chars.compact();
+                if (finished)
+                    return lineWriter.lines;
+                //в буфере одна незаконченная строка, которая в него не помещается
+                if (!chars.hasRemaining())
+                    chars = CharBuffer.allocate(chars.capacity() * 2).put(chars.flip());
+            }
+        }
+    }
+
+    /**
+     * Вычисляет строки из буфера символов и записывает результаты
+     */
+    private static final class LineWriter {
+
+        LineWriter(ExpressionSolver expressionSolver, Writer writer) {
+            this.expressionSolver = expressionSolver;
+            this.writer = writer;
+        }
+
+        /**
+         * Обрабатывает все законченные строки буфера и сдвигает позицию буфера за последнюю из них
+         * @param chars Буфер символов в режиме чтения
+         * @param last true, если буфер содержит конец файла и остаток тоже нужно обработать как строку
+         * @throws IOException Выбрасывается при ошибке записи
+         */
+        void writeLines(CharBuffer chars, boolean last) throws IOException {
+            char[] array = chars.array();
+            int offset = chars.arrayOffset();
+            int start = chars.position();
+            int limit = chars.limit();
+            for (int i = start; i < limit; i++) {
+                if (array[offset + i] == '\n') {
+                    writeLine(array, offset + start, offset + i);
+                    start = i + 1;
+                }
+            }
+            if (last && start < limit) {
+                writeLine(array, offset + start, offset + limit);
+                start = limit;
+            }
+            chars.position(start);
+        }
+
+        private void writeLine(char[] array, int start, int end) throws IOException {
+            lines++;
+            if (end > start && array[end - 1] == '\r')
+                end--;
+            if (isBlank(array, start, end)) {
+                writer.write('\n');
+                return;
+            }
+            line.set(array, start, end);
+            try {
+                double value = expressionSolver.evaluate(line);
+                number.setLength(0);
+                number.append(value);
+                if (digits.length < number.length())
+                    digits = new char[number.length()];
+                number.getChars(0, number.length(), digits, 0);
+                writer.write(digits, 0, number.length());
+            } catch (ExpressionException ex) {
+                writer.write(ex.getMessage());
+            }
+            writer.write('\n');
+        }
+
+        private static boolean isBlank(char[] array, int start, int end) {
+            for (int i = start; i < end; i++)
+                if (!Character.isWhitespace(array[i]))
+                    return false;
+            return true;
+        }
+
+        private final ExpressionSolver expressionSolver;
+        private final Writer writer;
+
+        /**
+         * Текущая строка, переиспользуется для всех строк файла
+         */
+        private final Line line = new Line();
+
+        /**
+         * Буферы для записи значения без создания строки
+         */
+        private final StringBuilder number = new StringBuilder(32);
+        private char[] digits = new char[32];
+
+        /**
+         * Количество обработанных строк
+         */
+        private long lines;
+    }
+
+    /**
+     * Строка как участок массива символов без копирования
+     */
+    private static final class Line implements CharSequence {
+
+        void set(char[] array, int start, int end) {
+            this.array = array;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return array[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return CharBuffer.wrap(array, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(array, start, end - start);
+        }
+
+        private char[] array;
+        private int start;
+        private int end;
+    }
+}
@@ -0,0 +1,228 @@
+package com.ole.expression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ole.expression.exceptions.*;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+/**
+ * Пакетное вычисление программы стековой машины по столбцам.
+ * Строки обрабатываются блоками по {@link #BLOCK} штук: каждая инструкция выполняется сразу для всего блока,
+ * а стек операндов состоит из массивов-столбцов. Внутренние циклы - простые циклы по индексу без вызовов,
+ * которые C2 умеет векторизовать. Ошибки вычисления отмечаются по строкам и не прерывают пакет;
+ * для каждой строки сохраняется первая ошибка в порядке выполнения, то есть та, которую выбросило бы обычное вычисление.
+ */
+final class BatchEvaluator {
+
+    /**
+     * Количество строк в блоке. Стек столбцов такого размера помещается в кэш процессора.
+     */
+    static final int BLOCK = 1024;
+
+    private static final byte NO_ERROR = 0;
+    private static final byte DIVISION_BY_ZERO = 1;
+    private static final byte NEGATIVE_BASE = 2;
+    private static final byte NOT_A_NUMBER = 3;
+    private static final String[] MESSAGES = {null, Operations.DIVISION_BY_ZERO, Operations.NEGATIVE_BASE, Operations.NOT_A_NUMBER};
+    private static final Reason[] REASONS = {null, Reason.DIVISION_BY_ZERO, Reason.NEGATIVE_BASE, Reason.NOT_A_NUMBER};
+
+    /**
+     * @param program Программа выражения
+     * @param variables Хранилище переменных
+     * @param metrics Показатели, в которые записываются ошибки строк, либо null, если сбор выключен
+     */
+    BatchEvaluator(StackProgram program, VariableStore variables, Metrics metrics) {
+        this.program = program;
+        this.variables = variables;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Вычисляет выражение для всех строк
+     * @param input Столбцы значений переменных
+     * @param output Массив результатов; его длина задаёт количество строк
+     * @return Итог вычисления с ошибками по строкам
+     * @throws ExpressionException Выбрасывается, если переменная не привязана к столбцу и не имеет значения
+     */
+    BatchResult evaluate(BatchInput input, double[] output) throws ExpressionException {
+        int rows = output.length;
+        input.checkLength(rows);
+
+        int[] code = program.code;
+        String[] columns = new String[code.length];
+        double[] scalars = new double[code.length];
+        for (int i = 0; i < code.length; i++) {
+            if ((code[i] & 0xFF) == StackProgram.VARIABLE) {
+                String name = variables.name(code[i] >>> 8);
+                if (input.contains(name))
+                    columns[i] = name;
+                else
+                    scalars[i] = Operations.variable(variables, code[i] >>> 8);
+            }
+        }
+
+        double[][] stack = new double[Math.max(program.maxStack, 1)][BLOCK];
+        double[][] temporaries = new double[program.temporaries][BLOCK];
+        byte[] errors = new byte[BLOCK];
+        List<BatchResult.RowError> rowErrors = new ArrayList<>();
+        for (int from = 0; from < rows; from += BLOCK) {
+            int length = Math.min(BLOCK, rows - from);
+            Arrays.fill(errors, 0, length, NO_ERROR);
+            runBlock(input, from, length, columns, scalars, stack, temporaries, errors);
+
+            double[] result = stack[0];
+            for (int i = 0; i < length; i++) {
+                if (errors[i] == NO_ERROR && Double.isNaN(result[i]))
+                    errors[i] = NOT_A_NUMBER;
+                if (errors[i] == NO_ERROR)
+                    output[from + i] = result[i];
+                else {
+                    output[from + i] = Double.NaN;
+                    rowErrors.add(new BatchResult.RowError(from + i, REASONS[errors[i]], MESSAGES[errors[i]]));
+                    if (metrics != null)
+                        metrics.failed(REASONS[errors[i]]);
+                }
+            }
+        }
+        return new BatchResult(rows, rowErrors);
+    }
+
+    /**
+     * Выполняет программу для одного блока строк
+     */
+    private void runBlock(BatchInput input, int from, int length, String[] columns, double[] scalars,
+                          double[][] stack, double[][] temporaries, byte[] errors) {
+        int[] code = program.code;
+        int top = -1;
+        for (int index = 0; index < code.length; index++) {
+            int operand = code[index] >>> 8;
+            switch (code[index] & 0xFF) {
+                case StackProgram.LITERAL -> Arrays.fill(stack[++top], 0, length, program.literals[operand]);
+                case StackProgram.VARIABLE -> {
+                    top++;
+                    if (columns[index] != null)
+                        input.read(columns[index], from, stack[top], length);
+                    else
+                        Arrays.fill(stack[top], 0, length, scalars[index]);
+                }
+                case StackProgram.NEGATE -> negate(stack[top], length);
+                case StackProgram.ADD -> {
+                    top--;
+                    add(stack[top], stack[top + 1], length);
+                }
+                case StackProgram.SUBTRACT -> {
+                    top--;
+                    subtract(stack[top], stack[top + 1], length);
+                }
+                case StackProgram.MULTIPLY -> {
+                    top--;
+                    multiply(stack[top], stack[top + 1], length);
+                }
+                case StackProgram.DIVIDE -> {
+                    top--;
+                    markZero(stack[top + 1], errors, length);
+                    divide(stack[top], stack[top + 1], length);
+                }
+                case StackProgram.POWER -> {
+                    top--;
+                    markNegative(stack[top], errors, length);
+                    power(stack[top], stack[top + 1], length);
+                }
+                case StackProgram.CALL -> {
+                    double[] values = stack[top];
+                    var function = program.functions[operand];
+                    for (int i = 0; i < length; i++)
+                        values[i] = function.applyAsDouble(values[i]);
+                }
+                case StackProgram.CALL2 -> {
+                    top--;
+                    double[] left = stack[top];
+                    double[] right = stack[top + 1];
+                    var function = program.binaryFunctions[operand];
+                    for (int i = 0; i < length; i++)
+                        left[i] = function.applyAsDouble(left[i], right[i]);
+                }
+                case StackProgram.CALLN -> {
+                    int arity = program.naryArities[operand];
+                    top -= arity - 1;
+                    var function = program.naryFunctions[operand];
+                    for (int i = 0; i < length; i++) {
+                        double[] arguments = new double[arity];
+                        for (int j = 0; j < arity; j++)
+                            arguments[j] = stack[top + j][i];
+                        stack[top][i] = function.applyAsDouble(arguments);
+                    }
+                }
+                case StackProgram.STORE -> System.arraycopy(stack[top], 0, temporaries[operand], 0, length);
+                case StackProgram.LOAD -> System.arraycopy(temporaries[operand], 0, stack[++top], 0, length);
+            }
+        }
+    }
+
+    private static void negate(double[] values, int length) {
+        for (int i = 0; i < length; i++)
+            values[i] = -values[i];
+    }
+
+    private static void add(double[] left, double[] right, int length) {
+        for (int i = 0; i < length; i++)
+            left[i] = left[i] + right[i];
+    }
+
+    private static void subtract(double[] left, double[] right, int length) {
+        for (int i = 0; i < length; i++)
+            left[i] = left[i] - right[i];
+    }
+
+    private static void multiply(double[] left, double[] right, int length) {
+        for (int i = 0; i < length; i++)
+            left[i] = left[i] * right[i];
+    }
+
+    private static void divide(double[] left, double[] right, int length) {
+        for (int i = 0; i < length; i++)
+            left[i] = left[i] / right[i];
+    }
+
+    private static void power(double[] base, double[] power, int length) {
+        for (int i = 0; i < length; i++)
+            base[i] = Math.pow(base[i], power[i]);
+    }
+
+    /**
+     * Отмечает ошибку в строках с нулевым делителем
+     */
+    private static void markZero(double[] values, byte[] errors, int length) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == 0 && errors[i] == NO_ERROR)
+                errors[i] = DIVISION_BY_ZERO;
+        }
+    }
+
+    /**
+     * Отмечает ошибку в строках с отрицательным основанием степени
+     */
+    private static void markNegative(double[] values, byte[] errors, int length) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] < 0 && errors[i] == NO_ERROR)
+                errors[i] = NEGATIVE_BASE;
+        }
+    }
+
+    /**
+     * Программа, которую вычисляет пакет
+     */
+    private final StackProgram program;
+
+    /**
+     * Хранилище переменных решателя
+     */
+    private final VariableStore variables;
+
+    /**
+     * Показатели решателя либо null
+     */
+    private final Metrics metrics;
+}
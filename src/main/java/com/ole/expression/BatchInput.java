@@ -0,0 +1,81 @@
+package com.ole.expression;
+
+import java.nio.DoubleBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Входные данные пакетного вычисления: столбцы значений переменных.
+ * Строка с номером i пакета - это i-е значения всех привязанных столбцов.
+ * Переменные, не привязанные к столбцам, берутся из решателя и одинаковы для всех строк.
+ */
+public final class BatchInput {
+
+    public BatchInput() {
+        columns = new HashMap<>();
+    }
+
+    /**
+     * Привязывает переменную к массиву значений
+     * @param name Название переменной
+     * @param column Значения переменной по строкам
+     * @return Эти же входные данные
+     */
+    public BatchInput bind(String name, double[] column) {
+        columns.put(name, column);
+        return this;
+    }
+
+    /**
+     * Привязывает переменную к буферу значений. Значения читаются с нулевой позиции буфера,
+     * позиция буфера не изменяется.
+     * @param name Название переменной
+     * @param column Значения переменной по строкам
+     * @return Эти же входные данные
+     */
+    public BatchInput bind(String name, DoubleBuffer column) {
+        columns.put(name, column);
+        return this;
+    }
+
+    /**
+     * Проверяет, привязана ли переменная к столбцу
+     * @param name Название переменной
+     * @return true, если переменная привязана
+     */
+    boolean contains(String name) {
+        return columns.containsKey(name);
+    }
+
+    /**
+     * Копирует значения столбца в массив
+     * @param name Название переменной
+     * @param from Номер первой строки
+     * @param target Массив, в который копируются значения
+     * @param length Количество строк
+     */
+    void read(String name, int from, double[] target, int length) {
+        Object column = columns.get(name);
+        if (column instanceof double[] array)
+            System.arraycopy(array, from, target, 0, length);
+        else
+            ((DoubleBuffer) column).get(from, target, 0, length);
+    }
+
+    /**
+     * Проверяет, что во всех столбцах хватает значений
+     * @param rows Количество строк
+     */
+    void checkLength(int rows) {
+        columns.forEach((name, column) -> {
+            int length = column instanceof double[] array ? array.length : ((DoubleBuffer) column).limit();
+            if (length < rows)
+                throw new IllegalArgumentException("В столбце " + name + " " + length + " значений, нужно " + rows);
+        });
+    }
+
+    /**
+     * Столбцы по названиям переменных: double[] или DoubleBuffer
+     */
+    private final Map<String, Object> columns;
+}
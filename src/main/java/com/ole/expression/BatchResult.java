@@ -0,0 +1,61 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+import java.util.List;
+
+/**
+ * Итог пакетного вычисления.
+ * Ошибка в одной строке не прерывает пакет: значение такой строки в выходном массиве равно NaN,
+ * а сама ошибка записывается сюда с номером строки.
+ */
+public final class BatchResult {
+
+    BatchResult(int rows, List<RowError> errors) {
+        this.rows = rows;
+        this.errors = List.copyOf(errors);
+    }
+
+    /**
+     * Ошибка вычисления в строке пакета
+     * @param row Номер строки
+     * @param reason Причина, с которой было бы выброшено ExpressionException при обычном вычислении
+     * @param message Сообщение этого ExpressionException
+     */
+    public record RowError(int row, Reason reason, String message) {
+    }
+
+    /**
+     * Возвращает количество вычисленных строк
+     * @return Количество строк
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Проверяет, были ли ошибки
+     * @return true, если хотя бы одна строка вычислена с ошибкой
+     */
+    public boolean hasErrors() {
+        return !errors.isEmpty();
+    }
+
+    /**
+     * Возвращает ошибки в порядке возрастания номеров строк
+     * @return Список ошибок
+     */
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Количество строк
+     */
+    private final int rows;
+
+    /**
+     * Ошибки по строкам
+     */
+    private final List<RowError> errors;
+}
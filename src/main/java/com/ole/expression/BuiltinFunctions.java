@@ -0,0 +1,50 @@
+package com.ole.expression;
+
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Встроенные функции решателя.
+ * Экземпляры функций единственны, поэтому по ним можно узнать встроенную функцию в дереве выражения,
+ * даже если пользователь зарегистрировал её под другим именем.
+ */
+final class BuiltinFunctions {
+
+    private BuiltinFunctions() {
+    }
+
+    static final DoubleUnaryOperator SIN = Math::sin;
+    static final DoubleUnaryOperator COS = Math::cos;
+    static final DoubleUnaryOperator TAN = Math::tan;
+    static final DoubleUnaryOperator LOG = Math::log;
+    static final DoubleUnaryOperator LOG10 = Math::log10;
+
+    /**
+     * Встроенные функции по названиям, под которыми они доступны в выражениях
+     */
+    static final Map<String, DoubleUnaryOperator> ALL = Map.of(
+            "sin", SIN,
+            "cos", COS,
+            "tan", TAN,
+            "log", LOG,
+            "log10", LOG10);
+
+    /**
+     * Возвращает название метода {@link Math}, которым реализована функция
+     * @param function Функция
+     * @return Название метода или null, если функция не встроенная
+     */
+    static String mathMethod(DoubleUnaryOperator function) {
+        if (function == SIN)
+            return "sin";
+        if (function == COS)
+            return "cos";
+        if (function == TAN)
+            return "tan";
+        if (function == LOG)
+            return "log";
+        if (function == LOG10)
+            return "log10";
+        return null;
+    }
+}
@@ -0,0 +1,22 @@
+package com.ole.expression;
+
+/**
+ * Снимок счётчиков кэша разобранных выражений
+ * @param hits Количество выражений, найденных в кэше
+ * @param misses Количество выражений, которые пришлось разобрать
+ * @param evictions Количество выражений, вытесненных из кэша из-за нехватки места
+ * @param invalidations Количество полных очисток кэша из-за изменения функций или настроек решателя
+ * @param size Текущее количество выражений в кэше
+ * @param capacity Наибольшее количество выражений в кэше
+ */
+public record CacheStats(long hits, long misses, long evictions, long invalidations, int size, int capacity) {
+
+    /**
+     * Возвращает долю обращений, найденных в кэше
+     * @return Доля попаданий от 0 до 1; 0, если обращений не было
+     */
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+}
@@ -0,0 +1,445 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.*;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Скомпилированное выражение.
+ * Разбор строки выполняется один раз в {@link ExpressionSolver#compile(String)},
+ * после чего выражение можно вычислять многократно, в том числе при изменившихся значениях переменных.
+ * Разобранное выражение не изменяется; значения переменных берутся из решателя, которым выражение было скомпилировано.
+ */
+public final class CompiledExpression {
+
+    /**
+     * Строит дерево выражения без свёртки констант, которое нужно для вычисления в long и BigDecimal
+     */
+    @FunctionalInterface
+    interface ExactTree {
+        Node build() throws ExpressionException;
+    }
+
+    /**
+     * Выполняет присваивание выражения так, как его выполнил бы решатель:
+     * в реактивном режиме - через формулы {@link DependencyTracker}, иначе - через {@link #assign()}
+     */
+    @FunctionalInterface
+    interface Assignment {
+        double perform(CompiledExpression expression) throws ExpressionException;
+    }
+
+    CompiledExpression(String source, String target, Node root, ExactTree exactTree, Map<String, FunctionDefinition> functions,
+                       VariableStore variables, int jitThreshold, Metrics metrics, Assignment assignment) {
+        this.source = source;
+        this.target = target;
+        this.targetSlot = target == null ? -1 : variables.slotOf(target);
+        this.root = root;
+        this.exactTree = exactTree;
+        this.functions = functions;
+        this.program = StackProgram.compile(root);
+        this.evaluator = program;
+        this.variables = variables;
+        this.jitThreshold = jitThreshold;
+        this.metrics = metrics;
+        this.assignment = assignment;
+        countFunctionCalls(root);
+    }
+
+    /**
+     * Вычисляет выражение с текущими значениями переменных.
+     * Если выражение содержит присваивание, результат записывается в переменную.
+     * @return Значение выражения
+     * @throws ExpressionException Выбрасывается при ошибках в вычислении результата выражения
+     */
+    public double evaluate() throws ExpressionException {
+        if (targetSlot >= 0)
+            return assignment.perform(this);
+        return compute();
+    }
+
+    /**
+     * Вычисляет выражение и записывает результат в переменную присваивания, минуя формулы реактивного режима
+     * @return Значение выражения
+     * @throws ExpressionException Выбрасывается при ошибках в вычислении результата выражения
+     */
+    double assign() throws ExpressionException {
+        double result = compute();
+        store(result);
+        return result;
+    }
+
+    /**
+     * Записывает значение в переменную присваивания, если она есть
+     * @param value Значение
+     */
+    void store(double value) {
+        if (targetSlot >= 0)
+            variables.set(targetSlot, value);
+    }
+
+    /**
+     * Вычисляет значение выражения, не выполняя присваивание
+     * @return Значение выражения
+     * @throws ExpressionException Выбрасывается при ошибках в вычислении результата выражения
+     */
+    double compute() throws ExpressionException {
+        if (metrics.isEnabled())
+            return computeMeasured();
+        return run();
+    }
+
+    private double run() throws ExpressionException {
+        Evaluator evaluator = this.evaluator;
+        if (evaluator == program && jitThreshold > 0 && ++calls >= jitThreshold)
+            evaluator = compileToBytecode();
+        return Operations.result(evaluator.evaluate(variables));
+    }
+
+    /**
+     * Вычисляет значение выражения и записывает длительность, вызовы функций и ошибки в показатели решателя
+     */
+    private double computeMeasured() throws ExpressionException {
+        long start = System.nanoTime();
+        try {
+            double result = run();
+            metrics.evaluated(System.nanoTime() - start);
+            addFunctionCalls(1);
+            return result;
+        } catch (ExpressionException ex) {
+            metrics.failed(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Подсчитывает, сколько раз одно вычисление вызывает каждую функцию.
+     * Повторяющиеся поддеревья в дереве - один и тот же объект и вычисляются один раз, поэтому учитываются однажды.
+     */
+    private void countFunctionCalls(Node root) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (!visited.add(node))
+                continue;
+            if (node instanceof Node.FunctionCall call)
+                counts.merge(call.name(), 1, Integer::sum);
+            node.children().forEach(pending::push);
+        }
+        calledFunctions = counts.keySet().toArray(new String[0]);
+        callsPerEvaluation = counts.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Добавляет вызовы функций нескольких вычислений к счётчикам решателя
+     * @param evaluations Количество вычислений
+     */
+    private void addFunctionCalls(int evaluations) {
+        if (calledFunctions.length == 0)
+            return;
+        LongAdder[] counters = functionCounters;
+        if (counters == null) {
+            counters = new LongAdder[calledFunctions.length];
+            for (int i = 0; i < counters.length; i++)
+                counters[i] = metrics.functionCounter(calledFunctions[i]);
+            functionCounters = counters;
+        }
+        for (int i = 0; i < counters.length; i++)
+            counters[i].add((long) callsPerEvaluation[i] * evaluations);
+    }
+
+    /**
+     * Вычисляет выражение сразу для многих строк значений переменных.
+     * Переменные, привязанные к столбцам, берутся из столбцов, остальные - из решателя.
+     * Присваивание в пакетном режиме не выполняется.
+     * @param input Столбцы значений переменных
+     * @param output Массив для результатов; его длина задаёт количество строк
+     * @return Итог вычисления; строки с ошибками перечислены в нём, а их результат равен NaN
+     * @throws ExpressionException Выбрасывается, если используемая переменная не привязана к столбцу и не имеет значения
+     */
+    public BatchResult evaluateBatch(BatchInput input, double[] output) throws ExpressionException {
+        if (!metrics.isEnabled())
+            return new BatchEvaluator(program, variables, null).evaluate(input, output);
+        try {
+            BatchResult result = new BatchEvaluator(program, variables, metrics).evaluate(input, output);
+            metrics.batch(result.getRows());
+            addFunctionCalls(result.getRows());
+            return result;
+        } catch (ExpressionException ex) {
+            metrics.failed(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Вычисляет значение выражения и его частные производные по переменным обратным режимом
+     * автоматического дифференцирования
+     * @param variables Переменные, по которым берутся производные
+     * @return Значение и производные
+     * @throws ExpressionException Выбрасывается при ошибках вычисления или если для функции, зависящей
+     * от выбранных переменных, не задана производная
+     * @see #gradient(DifferentiationMode, String...)
+     */
+    public Gradient gradient(String... variables) throws ExpressionException {
+        return gradient(DifferentiationMode.REVERSE, variables);
+    }
+
+    /**
+     * Вычисляет значение выражения и его частные производные по переменным за один проход по дереву,
+     * вместо двух вычислений на переменную при конечных разностях.
+     * Присваивание не выполняется. Производные встроенных функций известны, для пользовательских функций
+     * они задаются при регистрации в {@link ExpressionSolver#setFunction(String, java.util.function.DoubleUnaryOperator, java.util.function.DoubleUnaryOperator)}
+     * и других перегрузках с производными.
+     * @param mode Режим дифференцирования
+     * @param variables Переменные, по которым берутся производные
+     * @return Значение и производные
+     * @throws ExpressionException Выбрасывается при ошибках вычисления или если для функции, зависящей
+     * от выбранных переменных, не задана производная
+     * @throws IllegalArgumentException Выбрасывается, если переменная указана дважды
+     */
+    public Gradient gradient(DifferentiationMode mode, String... variables) throws ExpressionException {
+        Differentiator differentiator = this.differentiator;
+        if (differentiator == null) {
+            differentiator = new Differentiator(root);
+            this.differentiator = differentiator;
+        }
+        return mode == DifferentiationMode.FORWARD
+                ? differentiator.forward(this.variables, variables)
+                : differentiator.reverse(this.variables, variables);
+    }
+
+    /**
+     * Вычисляет выражение в целых числах long с проверкой переполнения.
+     * Результат равен точному значению выражения, иначе выбрасывается ошибка: значения переменных и констант должны быть
+     * целыми, деление - без остатка, показатель степени - неотрицательным. Функции вычисляются в double.
+     * Присваивание не выполняется, так как переменные хранят double.
+     * @return Значение выражения
+     * @throws ExpressionException Выбрасывается при ошибках вычисления; при переполнении - с причиной
+     * {@link ExpressionException.Reason#OVERFLOW}, при дробном значении - {@link ExpressionException.Reason#INEXACT}
+     */
+    public long evaluateLong() throws ExpressionException {
+        return LongEvaluator.evaluate(exactOrder(), variables);
+    }
+
+    /**
+     * Вычисляет выражение в десятичных дробях {@link BigDecimal}, например для денежных расчётов:
+     * значение 0.1 + 0.2 равно 0.3. Значения переменных переводятся в десятичные дроби по их кратчайшей записи.
+     * Функции и дробные степени вычисляются в double.
+     * Присваивание не выполняется, так как переменные хранят double.
+     * @param context Точность и способ округления арифметических операций и результата;
+     *                {@link MathContext#UNLIMITED} - вычисление без округления
+     * @return Значение выражения
+     * @throws ExpressionException Выбрасывается при ошибках вычисления; при вычислении без округления частное,
+     * не представимое конечной дробью, приводит к ошибке с причиной {@link ExpressionException.Reason#INEXACT}
+     */
+    public BigDecimal evaluateDecimal(MathContext context) throws ExpressionException {
+        return DecimalEvaluator.evaluate(exactOrder(), variables, Objects.requireNonNull(context));
+    }
+
+    /**
+     * Строит дерево без свёртки констант
+     */
+    Node exactRoot() throws ExpressionException {
+        return exactTree.build();
+    }
+
+    /**
+     * Возвращает пронумерованные узлы дерева без свёртки констант, при первом обращении строя их
+     */
+    private Postorder exactOrder() throws ExpressionException {
+        Postorder exactOrder = this.exactOrder;
+        if (exactOrder == null) {
+            exactOrder = Postorder.of(exactTree.build());
+            this.exactOrder = exactOrder;
+        }
+        return exactOrder;
+    }
+
+    /**
+     * Оценивает значения выражения сразу для всех значений переменных из заданных промежутков, не перебирая их.
+     * Оценка гарантированно содержит результат любого успешного вычисления, поэтому по ней можно отбросить
+     * целый блок строк, не вычисляя выражение для каждой строки. Переменные без промежутка берутся из решателя.
+     * @param ranges Промежутки значений переменных
+     * @return Промежуток значений и признак возможной ошибки
+     * @throws ExpressionException Выбрасывается, если переменной без промежутка не присвоено значение
+     */
+    public IntervalResult evaluateRange(Map<String, Interval> ranges) throws ExpressionException {
+        return new IntervalEvaluator(variables, Objects.requireNonNull(ranges)).evaluate(root);
+    }
+
+    /**
+     * Возвращает ячейку переменной, которой присваивается результат
+     * @return Номер ячейки или -1, если присваивания нет
+     */
+    int targetSlot() {
+        return targetSlot;
+    }
+
+    /**
+     * Возвращает корень оптимизированного дерева выражения
+     * @return Корень дерева
+     */
+    Node root() {
+        return root;
+    }
+
+    /**
+     * Возвращает функции, к которым обращалась исходная строка до свёртки констант.
+     * Вызовы встроенных функций от констант в оптимизированном дереве уже заменены результатом,
+     * поэтому по одному дереву нельзя узнать, от каких функций зависит выражение.
+     * @return Названия и определения функций в порядке первого вызова
+     */
+    Map<String, FunctionDefinition> functions() {
+        return functions;
+    }
+
+    /**
+     * Возвращает хранилище переменных решателя, которым выражение скомпилировано
+     * @return Хранилище переменных
+     */
+    VariableStore variables() {
+        return variables;
+    }
+
+    /**
+     * Возвращает программу стековой машины, по которой вычисляется выражение
+     * @return Программа
+     */
+    StackProgram program() {
+        return program;
+    }
+
+    /**
+     * Проверяет, вычисляется ли выражение сгенерированным классом
+     * @return true, если выражение скомпилировано в байткод
+     */
+    boolean isJitCompiled() {
+        return evaluator != program;
+    }
+
+    /**
+     * Переводит выражение в сгенерированный класс. При неудаче выражение остаётся на интерпретаторе
+     * и больше не пытается компилироваться.
+     * @return Способ вычисления, которым следует пользоваться далее
+     */
+    private synchronized Evaluator compileToBytecode() {
+        if (evaluator == program && jitThreshold > 0) {
+            try {
+                evaluator = JitCompiler.compile(root);
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+                jitThreshold = 0;
+            }
+        }
+        return evaluator;
+    }
+
+    /**
+     * Возвращает исходную строку выражения
+     * @return Исходная строка
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Возвращает имя переменной, которой присваивается результат
+     * @return Имя переменной или null, если присваивания нет
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    /**
+     * Исходная строка выражения
+     */
+    private final String source;
+
+    /**
+     * Переменная, в которую записывается результат, либо null
+     */
+    private final String target;
+
+    /**
+     * Ячейка переменной, в которую записывается результат, либо -1
+     */
+    private final int targetSlot;
+
+    /**
+     * Корень дерева выражения
+     */
+    private final Node root;
+
+    /**
+     * Программа, по которой вычисляется выражение
+     */
+    private final StackProgram program;
+
+    /**
+     * Текущий способ вычисления: интерпретатор или сгенерированный класс
+     */
+    private volatile Evaluator evaluator;
+
+    /**
+     * Хранилище переменных решателя
+     */
+    private final VariableStore variables;
+
+    /**
+     * Порог компиляции в байткод, 0 - компиляция отключена
+     */
+    private int jitThreshold;
+
+    /**
+     * Количество вычислений интерпретатором
+     */
+    private int calls;
+
+    private final ExactTree exactTree;
+
+    /**
+     * Функции исходной строки до свёртки констант
+     */
+    private final Map<String, FunctionDefinition> functions;
+
+    /**
+     * Узлы дерева без свёртки констант; нумеруются при первом вычислении в long или BigDecimal
+     */
+    private volatile Postorder exactOrder;
+
+    /**
+     * Порядок узлов для дифференцирования; строится при первом обращении
+     */
+    private volatile Differentiator differentiator;
+
+    /**
+     * Показатели решателя
+     */
+    private final Metrics metrics;
+
+    /**
+     * Способ выполнения присваивания, заданный решателем
+     */
+    private final Assignment assignment;
+
+    /**
+     * Функции, которые вызывает выражение, и количество их вызовов за одно вычисление
+     */
+    private String[] calledFunctions;
+    private int[] callsPerEvaluation;
+
+    /**
+     * Счётчики вызовов функций в показателях решателя, находятся при первом измеренном вычислении
+     */
+    private LongAdder[] functionCounters;
+}
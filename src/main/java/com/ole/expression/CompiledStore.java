@@ -0,0 +1,422 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Двоичный формат файла скомпилированных выражений.
+ * <p>
+ * Заголовок: сигнатура OLEX, версия формата, зарезервированное поле, длина и CRC32 содержимого.
+ * Содержимое: таблица строк в UTF-8, константы, функции с количеством аргументов, переменные с битами значений
+ * и выражения. Выражение записано номерами функций, к которым обращалась исходная строка, и оптимизированным деревом
+ * в обратной польской записи: каждый узел ссылается на номера уже записанных узлов, поэтому общие подвыражения
+ * хранятся один раз, а корень - последний узел. Все числа записаны в порядке big-endian.
+ * <p>
+ * Файл читается через отображение в память и не разбирается заново. Функции сохраняются по имени
+ * и при загрузке ищутся среди функций решателя, так как их реализация в файл не попадает.
+ * Вызовы встроенных функций от констант свёрнуты в дереве до записи, поэтому для встроенной функции сохраняется
+ * и её метод {@link Math}: файл не загружается, если в решателе под этим именем теперь другая функция,
+ * даже когда её вызовов в оптимизированном дереве не осталось.
+ */
+final class CompiledStore {
+
+    /**
+     * Сигнатура файла, символы OLEX
+     */
+    static final int MAGIC = 0x4F4C4558;
+
+    /**
+     * Версия формата; файлы других версий не загружаются
+     */
+    static final short VERSION = 2;
+
+    /**
+     * Размер заголовка в байтах
+     */
+    static final int HEADER_SIZE = 16;
+
+    private static final byte LITERAL = 0;
+    private static final byte CONSTANT = 1;
+    private static final byte VARIABLE = 2;
+    private static final byte NEGATION = 3;
+    private static final byte BINARY = 4;
+    private static final byte CALL = 5;
+
+    /**
+     * Выражение, прочитанное из файла
+     * @param source Исходная строка или null
+     * @param target Переменная присваивания или null
+     * @param root Корень оптимизированного дерева
+     * @param functions Функции исходной строки до свёртки констант, найденные среди функций решателя
+     */
+    record Entry(String source, String target, Node root, Map<String, FunctionDefinition> functions) {
+    }
+
+    /**
+     * Содержимое файла
+     * @param variables Имена переменных и битовые представления значений, {@link VariableStore#UNDEFINED} - без значения
+     * @param entries Выражения в порядке записи
+     */
+    record Contents(Map<String, Long> variables, List<Entry> entries) {
+    }
+
+    private CompiledStore() {
+    }
+
+    /**
+     * Записывает выражения, константы и переменные в файл
+     * @param file Путь к файлу; существующий файл перезаписывается
+     * @param expressions Выражения
+     * @param constants Константы решателя
+     * @param variables Хранилище переменных решателя
+     * @throws IOException Выбрасывается при ошибке записи
+     * @throws IllegalArgumentException Выбрасывается, если выражения скомпилированы с разными функциями под одним именем
+     */
+    static void write(Path file, Collection<CompiledExpression> expressions, Map<String, Double> constants,
+                      VariableStore variables) throws IOException {
+        Encoder writer = new Encoder();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+
+        out.writeInt(constants.size());
+        for (Map.Entry<String, Double> constant : constants.entrySet()) {
+            out.writeInt(writer.string(constant.getKey()));
+            out.writeLong(Double.doubleToRawLongBits(constant.getValue()));
+        }
+        ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        DataOutputStream nodesOut = new DataOutputStream(nodes);
+        for (CompiledExpression expression : expressions)
+            writer.expression(nodesOut, expression);
+        out.writeInt(writer.functions.size());
+        int function = 0;
+        for (String name : writer.functions.keySet()) {
+            FunctionDefinition definition = writer.definitions.get(function++);
+            out.writeInt(writer.string(name));
+            out.writeInt(definition.arity());
+            out.writeInt(writer.string(builtin(definition)));
+        }
+        int size = variables.size();
+        out.writeInt(size);
+        for (int slot = 0; slot < size; slot++) {
+            out.writeInt(writer.string(variables.name(slot)));
+            out.writeLong(variables.isDefined(slot) ? Double.doubleToRawLongBits(variables.get(slot)) : VariableStore.UNDEFINED);
+        }
+        out.writeInt(expressions.size());
+        nodes.writeTo(out);
+
+        //таблица строк стоит в начале содержимого, но заполняется по ходу записи остальных частей
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(body.size() + 64 * writer.strings.size());
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        payloadOut.writeInt(writer.strings.size());
+        for (String string : writer.strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            payloadOut.writeInt(bytes.length);
+            payloadOut.write(bytes);
+        }
+        body.writeTo(payloadOut);
+
+        byte[] content = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            stream.writeInt(MAGIC);
+            stream.writeShort(VERSION);
+            stream.writeShort(0);
+            stream.writeInt(content.length);
+            stream.writeInt((int) crc.getValue());
+            stream.write(content);
+        }
+    }
+
+    /**
+     * Возвращает метод {@link Math}, которым реализована встроенная функция
+     * @param definition Определение функции
+     * @return Название метода или null, если функция не встроенная
+     */
+    private static String builtin(FunctionDefinition definition) {
+        return definition.unary() == null ? null : BuiltinFunctions.mathMethod(definition.unary());
+    }
+
+    /**
+     * Номера строк, функций и узлов при записи
+     */
+    private static final class Encoder {
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+        private final Map<String, Integer> functions = new LinkedHashMap<>();
+        private final List<FunctionDefinition> definitions = new ArrayList<>();
+        private Map<Node, Integer> nodes;
+
+        int string(String value) {
+            if (value == null)
+                return -1;
+            Integer index = strings.putIfAbsent(value, strings.size());
+            return index == null ? strings.size() - 1 : index;
+        }
+
+        int function(String name, FunctionDefinition definition) {
+            Integer index = functions.putIfAbsent(name, functions.size());
+            if (index == null) {
+                definitions.add(definition);
+                return functions.size() - 1;
+            }
+            if (!definitions.get(index).equals(definition))
+                throw new IllegalArgumentException("Выражения скомпилированы с разными функциями " + name);
+            return index;
+        }
+
+        void expression(DataOutputStream out, CompiledExpression expression) throws IOException {
+            out.writeInt(string(expression.getSource()));
+            out.writeInt(string(expression.getTarget()));
+            out.writeInt(expression.functions().size());
+            for (Map.Entry<String, FunctionDefinition> function : expression.functions().entrySet())
+                out.writeInt(function(function.getKey(), function.getValue()));
+            nodes = new IdentityHashMap<>();
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream recordsOut = new DataOutputStream(records);
+            for (Node node : Node.postorder(expression.root()))
+                node(recordsOut, node);
+            out.writeInt(nodes.size());
+            records.writeTo(out);
+        }
+
+        /**
+         * Записывает узел; его потомки уже записаны, а повторяющийся узел обходом встречается один раз
+         */
+        private void node(DataOutputStream out, Node node) throws IOException {
+            List<Node> children = node.children();
+            if (node instanceof Node.Literal literal) {
+                out.writeByte(LITERAL);
+                out.writeLong(Double.doubleToRawLongBits(literal.value()));
+            }
+            else if (node instanceof Node.Constant constant) {
+                out.writeByte(CONSTANT);
+                out.writeInt(string(constant.name()));
+                out.writeLong(Double.doubleToRawLongBits(constant.value()));
+            }
+            else if (node instanceof Node.Variable variable) {
+                out.writeByte(VARIABLE);
+                out.writeInt(string(variable.name()));
+            }
+            else if (node instanceof Node.Negation) {
+                out.writeByte(NEGATION);
+            }
+            else if (node instanceof Node.Binary binary) {
+                out.writeByte(BINARY);
+                out.writeByte(binary.operator());
+            }
+            else if (node instanceof Node.FunctionCall call) {
+                out.writeByte(CALL);
+                out.writeInt(functions.get(call.name()));
+            }
+            for (Node child : children)
+                out.writeInt(nodes.get(child));
+            nodes.put(node, nodes.size());
+        }
+    }
+
+    /**
+     * Загружает файл через отображение в память
+     * @param file Путь к файлу
+     * @param functions Функции решателя
+     * @param constants Константы решателя
+     * @param variables Хранилище переменных, в котором создаются ячейки переменных выражений
+     * @param symbols Таблица имён решателя
+     * @return Содержимое файла
+     * @throws IOException Выбрасывается при ошибке чтения
+     * @throws ExpressionException Выбрасывается, если файл повреждён, имеет другую версию формата,
+     * содержит незарегистрированную функцию, переопределённую встроенную функцию или константу с другим значением
+     */
+    static Contents read(Path file, Map<String, FunctionDefinition> functions, Map<String, Double> constants,
+                         VariableStore variables, SymbolTable symbols) throws IOException, ExpressionException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE)
+                throw corrupted();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt() != MAGIC)
+            throw new ExpressionException(Reason.INVALID_STORE, "Файл не является файлом скомпилированных выражений: " + file);
+        short version = buffer.getShort();
+        if (version != VERSION)
+            throw new ExpressionException(Reason.INVALID_STORE, "Неподдерживаемая версия формата файла: " + version);
+        buffer.getShort();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length != buffer.remaining())
+            throw corrupted();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice());
+        if ((int) crc.getValue() != checksum)
+            throw corrupted();
+
+        try {
+            return new Reader(buffer.slice(), functions, constants, variables, symbols).read();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            throw corrupted();
+        }
+    }
+
+    private static ExpressionException corrupted() {
+        return new ExpressionException(Reason.INVALID_STORE, "Файл скомпилированных выражений повреждён");
+    }
+
+    /**
+     * Разбор содержимого файла
+     */
+    private static final class Reader {
+
+        Reader(ByteBuffer buffer, Map<String, FunctionDefinition> functions, Map<String, Double> constants,
+               VariableStore variables, SymbolTable symbols) {
+            this.buffer = buffer;
+            this.registered = functions;
+            this.constants = constants;
+            this.variables = variables;
+            this.symbols = symbols;
+        }
+
+        Contents read() throws ExpressionException {
+            strings = new String[count()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = buffer.getInt();
+                String value = StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), length)).toString();
+                buffer.position(buffer.position() + length);
+                strings[i] = symbols.intern(value, 0, value.length());
+            }
+
+            int constantCount = count();
+            for (int i = 0; i < constantCount; i++) {
+                String name = name();
+                long bits = buffer.getLong();
+                Double value = constants.get(name);
+                if (value == null || Double.doubleToRawLongBits(value) != bits)
+                    throw new ExpressionException(Reason.INVALID_STORE, "Константа не совпадает с константой решателя: " + name);
+            }
+
+            functions = new FunctionDefinition[count()];
+            names = new String[functions.length];
+            for (int i = 0; i < functions.length; i++) {
+                names[i] = name();
+                int arity = buffer.getInt();
+                functions[i] = registered.get(names[i]);
+                if (functions[i] == null)
+                    throw new ExpressionException(Reason.INVALID_STORE, "Функция не зарегистрирована в решателе: " + names[i]);
+                if (functions[i].arity() != arity)
+                    throw new ExpressionException(Reason.INVALID_STORE, "Количество аргументов функции " + names[i]
+                            + " не совпадает с зарегистрированной: ожидается " + functions[i].arity() + ", в файле " + arity);
+                String builtin = string();
+                if (builtin != null && !builtin.equals(builtin(functions[i])))
+                    throw new ExpressionException(Reason.INVALID_STORE, "Функция " + names[i]
+                            + " при сохранении была встроенной функцией Math." + builtin + " и переопределена в решателе");
+            }
+
+            int variableCount = count();
+            Map<String, Long> values = new LinkedHashMap<>();
+            for (int i = 0; i < variableCount; i++)
+                values.put(name(), buffer.getLong());
+
+            int expressionCount = count();
+            List<Entry> entries = new ArrayList<>(expressionCount);
+            for (int i = 0; i < expressionCount; i++) {
+                String source = string();
+                String target = string();
+                int functionCount = count();
+                Map<String, FunctionDefinition> resolved = functionCount == 0 ? Map.of() : new LinkedHashMap<>();
+                for (int j = 0; j < functionCount; j++) {
+                    int function = buffer.getInt();
+                    resolved.put(names[function], functions[function]);
+                }
+                Node[] nodes = new Node[count()];
+                if (nodes.length == 0)
+                    throw corrupted();
+                for (int j = 0; j < nodes.length; j++)
+                    nodes[j] = node(nodes, j);
+                entries.add(new Entry(source, target, nodes[nodes.length - 1], resolved));
+            }
+            if (buffer.hasRemaining())
+                throw corrupted();
+            return new Contents(values, entries);
+        }
+
+        private Node node(Node[] nodes, int index) throws ExpressionException {
+            byte kind = buffer.get();
+            if (kind == LITERAL)
+                return new Node.Literal(Double.longBitsToDouble(buffer.getLong()));
+            if (kind == CONSTANT)
+                return new Node.Constant(name(), Double.longBitsToDouble(buffer.getLong()));
+            if (kind == VARIABLE) {
+                String name = name();
+                return new Node.Variable(name, variables.slotOf(name));
+            }
+            if (kind == NEGATION)
+                return new Node.Negation(child(nodes, index));
+            if (kind == BINARY) {
+                char operator = (char) buffer.get();
+                if ("+-*/^".indexOf(operator) < 0)
+                    throw corrupted();
+                Node left = child(nodes, index);
+                return new Node.Binary(operator, left, child(nodes, index));
+            }
+            if (kind == CALL) {
+                int function = buffer.getInt();
+                Node[] arguments = new Node[functions[function].arity()];
+                for (int i = 0; i < arguments.length; i++)
+                    arguments[i] = child(nodes, index);
+                return functions[function].call(names[function], arguments);
+            }
+            throw corrupted();
+        }
+
+        /**
+         * Читает ссылку на потомка; потомок всегда записан раньше узла, поэтому дерево не может содержать циклов
+         */
+        private Node child(Node[] nodes, int index) throws ExpressionException {
+            int child = buffer.getInt();
+            if (child < 0 || child >= index)
+                throw corrupted();
+            return nodes[child];
+        }
+
+        private String string() {
+            int index = buffer.getInt();
+            return index == -1 ? null : strings[index];
+        }
+
+        /**
+         * Читает обязательное имя
+         */
+        private String name() throws ExpressionException {
+            String name = string();
+            if (name == null)
+                throw corrupted();
+            return name;
+        }
+
+        private int count() throws ExpressionException {
+            int count = buffer.getInt();
+            if (count < 0 || count > buffer.remaining())
+                throw corrupted();
+            return count;
+        }
+
+        private final ByteBuffer buffer;
+        private final Map<String, FunctionDefinition> registered;
+        private final Map<String, Double> constants;
+        private final VariableStore variables;
+        private final SymbolTable symbols;
+        private String[] strings;
+        private FunctionDefinition[] functions;
+        private String[] names;
+    }
+}
@@ -0,0 +1,26 @@
+package com.ole.expression;
+
+/**
+ * Решатель выражений, который можно разделять между потоками.
+ * <p>
+ * Модель памяти:
+ * <ul>
+ *     <li>Словари функций и констант неизменяемы; добавление функции публикует новый словарь через volatile-поле,
+ *     поэтому компиляция и вычисление никогда не ждут записи.</li>
+ *     <li>Переменные хранятся в {@link ConcurrentVariableTable}: чтение и запись значения выполняются без блокировок,
+ *     присваивание (в том числе var1 = ... в {@link #evaluate(String)}) записывает значение атомарно,
+ *     и записанное значение видно всем потокам, которые читают переменную после записи.</li>
+ *     <li>Выражение читает каждую переменную в момент обращения к ней, поэтому при одновременной записи
+ *     разные переменные одного выражения могут относиться к разным моментам времени.
+ *     Составные действия вида x = x + 1 не атомарны.</li>
+ * </ul>
+ */
+public class ConcurrentExpressionSolver extends ExpressionSolver {
+
+    /**
+     * Устанавливает стартовые списки функций и операторов
+     */
+    public ConcurrentExpressionSolver() {
+        super(new ConcurrentVariableTable());
+    }
+}
@@ -0,0 +1,113 @@
+package com.ole.expression;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Потокобезопасная таблица переменных.
+ * Значения хранятся в блоках {@link AtomicLongArray} фиксированного размера, поэтому рост таблицы
+ * не копирует уже существующие значения и не мешает читателям. Чтение и запись значения - одна
+ * volatile-операция без блокировок, запись значения атомарна. Блокировка берётся только при создании
+ * новой ячейки, то есть при первом появлении имени переменной.
+ * Составные действия вида «прочитать, вычислить, записать» (например, x = x + 1) атомарными не являются.
+ */
+final class ConcurrentVariableTable implements VariableStore {
+
+    ConcurrentVariableTable() {
+        slots = new ConcurrentHashMap<>();
+        chunks = new Chunk[]{new Chunk()};
+    }
+
+    @Override
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null)
+            return slot;
+        synchronized (this) {
+            slot = slots.get(name);
+            if (slot != null)
+                return slot;
+            int index = size;
+            Chunk[] current = chunks;
+            if (index >>> CHUNK_BITS == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                for (int i = index >>> CHUNK_BITS; i < current.length; i++)
+                    current[i] = new Chunk();
+                chunks = current;
+            }
+            current[index >>> CHUNK_BITS].names[index & CHUNK_MASK] = name;
+            size = index + 1;
+            //публикация в ConcurrentHashMap делает имя и блок видимыми всем, кто получил номер ячейки
+            slots.put(name, index);
+            return index;
+        }
+    }
+
+    @Override
+    public boolean contains(String name) {
+        Integer slot = slots.get(name);
+        return slot != null && isDefined(slot);
+    }
+
+    @Override
+    public boolean isDefined(int slot) {
+        return bits(slot) != UNDEFINED;
+    }
+
+    @Override
+    public double get(int slot) {
+        return Double.longBitsToDouble(bits(slot));
+    }
+
+    @Override
+    public void set(int slot, double value) {
+        chunks[slot >>> CHUNK_BITS].values.set(slot & CHUNK_MASK, Double.doubleToLongBits(value));
+    }
+
+    @Override
+    public String name(int slot) {
+        return chunks[slot >>> CHUNK_BITS].names[slot & CHUNK_MASK];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private long bits(int slot) {
+        return chunks[slot >>> CHUNK_BITS].values.get(slot & CHUNK_MASK);
+    }
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Блок ячеек
+     */
+    private static final class Chunk {
+        final String[] names = new String[CHUNK_SIZE];
+        final AtomicLongArray values = new AtomicLongArray(CHUNK_SIZE);
+
+        Chunk() {
+            for (int i = 0; i < CHUNK_SIZE; i++)
+                values.lazySet(i, UNDEFINED);
+        }
+    }
+
+    /**
+     * Номера ячеек по названиям переменных
+     */
+    private final ConcurrentHashMap<String, Integer> slots;
+
+    /**
+     * Блоки ячеек; массив заменяется целиком при росте таблицы
+     */
+    private volatile Chunk[] chunks;
+
+    /**
+     * Количество занятых ячеек
+     */
+    private volatile int size;
+}
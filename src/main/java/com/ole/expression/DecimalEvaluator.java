@@ -0,0 +1,142 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * Десятичное вычисление дерева выражения в {@link BigDecimal}.
+ * <p>
+ * Литералы и значения переменных переводятся в десятичные дроби по их кратчайшей записи, поэтому 0.1 остаётся 0.1.
+ * Сложение, вычитание, умножение, деление и целые степени выполняются с точностью и округлением из {@link MathContext};
+ * при {@link MathContext#UNLIMITED} они точны, а частное, не представимое конечной дробью, приводит к {@link Reason#INEXACT}.
+ * Функции и дробные степени вычисляются в double, поэтому их значения точны не более чем до 16 знаков.
+ * <p>
+ * Дерево должно быть без свёртки констант, которую оптимизатор выполняет в double.
+ */
+final class DecimalEvaluator {
+
+    private DecimalEvaluator() {
+    }
+
+    /**
+     * Наибольший показатель, допустимый в {@link BigDecimal#pow(int)}
+     */
+    private static final int MAX_POWER = 999_999_999;
+
+    /**
+     * Наибольший размер точной степени в битах (около 300 тысяч десятичных знаков).
+     * Без ограничения точности время и память степени растут вместе с размером результата,
+     * поэтому, например, 2 ^ 999999999 не вычисляется, а приводит к {@link Reason#OVERFLOW}.
+     */
+    private static final long MAX_EXACT_BITS = 1L << 20;
+
+    /**
+     * Вычисляет выражение
+     * @param order Узлы дерева без свёртки констант
+     * @param variables Хранилище переменных
+     * @param context Точность и способ округления
+     * @return Значение выражения, округлённое по context
+     * @throws ExpressionException Выбрасывается при ошибках вычисления и частном, не представимом точно
+     */
+    static BigDecimal evaluate(Postorder order, VariableStore variables, MathContext context) throws ExpressionException {
+        Node[] nodes = order.nodes();
+        int[][] children = order.children();
+        BigDecimal[] values = new BigDecimal[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+            values[i] = value(nodes[i], children[i], values, variables, context);
+        return values[nodes.length - 1].round(context);
+    }
+
+    /**
+     * Вычисляет узел; значения дочерних узлов к этому моменту уже вычислены
+     */
+    private static BigDecimal value(Node node, int[] args, BigDecimal[] values, VariableStore variables, MathContext context)
+            throws ExpressionException {
+        if (node instanceof Node.Literal literal)
+            return decimal(literal.value());
+        if (node instanceof Node.Constant constant)
+            return decimal(constant.value());
+        if (node instanceof Node.Variable variable)
+            return decimal(Operations.variable(variables, variable.slot()));
+        if (node instanceof Node.Negation)
+            return values[args[0]].negate();
+        if (node instanceof Node.Binary binary) {
+            BigDecimal left = values[args[0]];
+            BigDecimal right = values[args[1]];
+            return switch (binary.operator()) {
+                case '+' -> left.add(right, context);
+                case '-' -> left.subtract(right, context);
+                case '*' -> left.multiply(right, context);
+                case '/' -> divide(left, right, context);
+                default -> power(left, right, context);
+            };
+        }
+        double[] arguments = new double[args.length];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = values[args[i]].doubleValue();
+        return decimal(Operations.call((Node.FunctionCall) node, arguments));
+    }
+
+    private static BigDecimal divide(BigDecimal left, BigDecimal right, MathContext context) throws ExpressionException {
+        if (right.signum() == 0)
+            throw new ExpressionException(Reason.DIVISION_BY_ZERO, Operations.DIVISION_BY_ZERO);
+        try {
+            return left.divide(right, context);
+        } catch (ArithmeticException ex) {
+            throw new ExpressionException(Reason.INEXACT, "Частное не представимо конечной десятичной дробью: " + left + " / " + right);
+        }
+    }
+
+    private static BigDecimal power(BigDecimal base, BigDecimal power, MathContext context) throws ExpressionException {
+        if (base.signum() < 0)
+            throw new ExpressionException(Reason.NEGATIVE_BASE, Operations.NEGATIVE_BASE);
+        BigInteger integer = integer(power);
+        if (integer == null || integer.abs().compareTo(BigInteger.valueOf(MAX_POWER)) > 0)
+            return decimal(Math.pow(base.doubleValue(), power.doubleValue()));
+        int n = integer.intValue();
+        if (n < 0 && base.signum() == 0)
+            throw new ExpressionException(Reason.DIVISION_BY_ZERO, Operations.DIVISION_BY_ZERO);
+        //размер точного результата - размер основания без масштаба, умноженный на показатель; у 0 и ±10^k он не растёт
+        int bits = base.unscaledValue().abs().bitLength();
+        if (context.getPrecision() == 0 && bits > 1 && (long) bits * Math.abs(n) > MAX_EXACT_BITS)
+            throw new ExpressionException(Reason.OVERFLOW, "Точная степень слишком велика: около "
+                    + (long) bits * Math.abs(n) + " бит в " + base + " ^ " + n);
+        try {
+            if (n >= 0)
+                return base.pow(n, context);
+            //BigDecimal.pow не принимает отрицательный показатель без ограничения точности
+            return divide(BigDecimal.ONE, base.pow(-n, context), context);
+        } catch (ArithmeticException ex) {
+            //порядок результата не помещается в масштаб BigDecimal
+            throw new ExpressionException(Reason.OVERFLOW, "Переполнение порядка в " + base + " ^ " + n);
+        }
+    }
+
+    /**
+     * Возвращает значение как целое число
+     * @return Целое число или null, если значение дробное
+     */
+    private static BigInteger integer(BigDecimal value) {
+        try {
+            return value.toBigIntegerExact();
+        } catch (ArithmeticException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Переводит значение в десятичную дробь по его кратчайшей записи; целые числа получают нулевой масштаб, а не 2.0
+     * @throws ExpressionException Выбрасывается, если значение бесконечно или не является числом
+     */
+    private static BigDecimal decimal(double value) throws ExpressionException {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            throw new ExpressionException(Reason.NOT_A_NUMBER, Operations.NOT_A_NUMBER);
+        if (value == Math.rint(value) && Math.abs(value) <= 0x1p53)
+            return BigDecimal.valueOf((long) value);
+        return BigDecimal.valueOf(value);
+    }
+}
@@ -0,0 +1,230 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Формулы переменных реактивного режима и обратные зависимости между ними.
+ * <p>
+ * Для каждой переменной, заданной присваиванием, хранится скомпилированная формула,
+ * а для каждой переменной - формулы, которые её читают. При изменении переменной обходятся только зависящие от неё формулы
+ * и пересчитываются в топологическом порядке, поэтому стоимость изменения пропорциональна затронутой части графа,
+ * а не общему количеству формул.
+ */
+final class DependencyTracker {
+
+    DependencyTracker(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Запоминает формулу переменной, вычисляет её и пересчитывает зависящие от переменной формулы
+     * @param formula Скомпилированное присваивание
+     * @return Значение формулы
+     * @throws ExpressionException Выбрасывается при ошибке вычисления или если формула замыкает цикл зависимостей.
+     * В этих случаях формула не запоминается.
+     */
+    synchronized double define(CompiledExpression formula) throws ExpressionException {
+        Set<String> reads = checkCycle(formula);
+        double value = formula.compute();
+        register(formula, reads, value);
+        return value;
+    }
+
+    /**
+     * Запоминает формулу переменной, значение которой уже вычислено, например на уровне сценария,
+     * и пересчитывает зависящие от переменной формулы
+     * @param formula Скомпилированное присваивание
+     * @param value Значение формулы
+     * @throws ExpressionException Выбрасывается, если формула замыкает цикл зависимостей; тогда значение не записывается
+     */
+    synchronized void define(CompiledExpression formula, double value) throws ExpressionException {
+        register(formula, checkCycle(formula), value);
+    }
+
+    /**
+     * Проверяет, что формула не замыкает цикл зависимостей
+     * @return Переменные, которые читает формула
+     */
+    private Set<String> checkCycle(CompiledExpression formula) throws ExpressionException {
+        Set<String> reads = Node.variableNames(formula.root());
+        String cycle = findCycle(formula.getTarget(), reads);
+        if (cycle != null) {
+            ExpressionException ex = new ExpressionException(Reason.DEPENDENCY_CYCLE, "Циклическая зависимость переменных: " + cycle);
+            if (metrics.isEnabled())
+                metrics.failed(ex);
+            throw ex;
+        }
+        return reads;
+    }
+
+    private void register(CompiledExpression formula, Set<String> reads, double value) {
+        String target = formula.getTarget();
+        formula.store(value);
+        remove(target);
+        formulas.put(target, new Formula(formula, reads));
+        for (String name : reads)
+            dependents.computeIfAbsent(name, key -> new LinkedHashSet<>()).add(target);
+        notifyChanged(target, value);
+        recompute(target);
+    }
+
+    /**
+     * Отмечает, что переменной присвоено значение напрямую: её формула забывается,
+     * а зависящие от неё формулы пересчитываются
+     * @param name Название переменной
+     * @param value Новое значение
+     */
+    synchronized void assigned(String name, double value) {
+        remove(name);
+        notifyChanged(name, value);
+        recompute(name);
+    }
+
+    /**
+     * Забывает все формулы
+     */
+    synchronized void clear() {
+        formulas.clear();
+        dependents.clear();
+    }
+
+    void addListener(VariableListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+
+    void removeListener(VariableListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Пересчитывает формулы, которые прямо или косвенно читают переменную
+     * @param name Изменившаяся переменная
+     */
+    private void recompute(String name) {
+        for (String target : downstream(name)) {
+            try {
+                notifyChanged(target, formulas.get(target).expression.assign());
+            } catch (ExpressionException ex) {
+                for (VariableListener listener : listeners)
+                    listener.evaluationFailed(target, ex);
+            }
+        }
+    }
+
+    /**
+     * Упорядочивает зависящие от переменной формулы топологически:
+     * обратный порядок завершения обхода в глубину по обратным зависимостям
+     * @param name Изменившаяся переменная
+     * @return Переменные с формулами в порядке пересчёта, без самой переменной
+     */
+    private List<String> downstream(String name) {
+        List<String> order = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        visited.add(name);
+        //явный стек вместо рекурсии: цепочки формул могут быть длинными
+        Deque<Iterator<String>> stack = new ArrayDeque<>();
+        Deque<String> path = new ArrayDeque<>();
+        stack.push(dependentsOf(name));
+        while (!stack.isEmpty()) {
+            Iterator<String> next = stack.peek();
+            if (next.hasNext()) {
+                String dependent = next.next();
+                if (visited.add(dependent)) {
+                    path.push(dependent);
+                    stack.push(dependentsOf(dependent));
+                }
+            }
+            else {
+                stack.pop();
+                if (!path.isEmpty())
+                    order.add(path.pop());
+            }
+        }
+        Collections.reverse(order);
+        return order;
+    }
+
+    /**
+     * Ищет цикл, который возник бы, если переменная target стала бы читать переменные reads
+     * @return Цикл в виде a -> b -> a или null, если цикла нет
+     */
+    private String findCycle(String target, Set<String> reads) {
+        //родитель каждой найденной переменной на пути от target по обратным зависимостям
+        Map<String, String> parents = new HashMap<>();
+        Deque<String> queue = new ArrayDeque<>();
+        parents.put(target, null);
+        queue.add(target);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (reads.contains(current)) {
+                StringJoiner cycle = new StringJoiner(" -> ");
+                cycle.add(target);
+                for (String name = current; name != null; name = parents.get(name))
+                    cycle.add(name);
+                return cycle.toString();
+            }
+            for (Iterator<String> it = dependentsOf(current); it.hasNext(); ) {
+                String dependent = it.next();
+                if (!parents.containsKey(dependent)) {
+                    parents.put(dependent, current);
+                    queue.add(dependent);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Забывает формулу переменной и её зависимости
+     */
+    private void remove(String target) {
+        Formula previous = formulas.remove(target);
+        if (previous == null)
+            return;
+        for (String name : previous.reads) {
+            Set<String> set = dependents.get(name);
+            set.remove(target);
+            if (set.isEmpty())
+                dependents.remove(name);
+        }
+    }
+
+    private Iterator<String> dependentsOf(String name) {
+        return dependents.getOrDefault(name, Set.of()).iterator();
+    }
+
+    private void notifyChanged(String name, double value) {
+        for (VariableListener listener : listeners)
+            listener.variableChanged(name, value);
+    }
+
+    /**
+     * Формула переменной и переменные, которые она читает
+     */
+    private record Formula(CompiledExpression expression, Set<String> reads) {
+    }
+
+    /**
+     * Формулы по названиям переменных
+     */
+    private final Map<String, Formula> formulas = new LinkedHashMap<>();
+
+    /**
+     * Для каждой переменной - переменные, формулы которых её читают
+     */
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+
+    /**
+     * Показатели решателя
+     */
+    private final Metrics metrics;
+
+    /**
+     * Слушатели изменений
+     */
+    private final List<VariableListener> listeners = new CopyOnWriteArrayList<>();
+}
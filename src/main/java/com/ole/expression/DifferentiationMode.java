@@ -0,0 +1,17 @@
+package com.ole.expression;
+
+/**
+ * Режим автоматического дифференцирования
+ */
+public enum DifferentiationMode {
+    /**
+     * Прямой режим: производные по всем переменным переносятся от аргументов к результату вместе со значениями.
+     * Выгоден, когда переменных мало.
+     */
+    FORWARD,
+    /**
+     * Обратный режим: после вычисления значений производная результата переносится от корня к аргументам.
+     * Стоимость не зависит от количества переменных, поэтому режим выгоден для градиента по многим переменным.
+     */
+    REVERSE
+}
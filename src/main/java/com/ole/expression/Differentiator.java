@@ -0,0 +1,260 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+import java.util.*;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Автоматическое дифференцирование оптимизированного дерева выражения.
+ * <p>
+ * Узлы дерева один раз выстраиваются в обратном польском порядке; повторяющиеся подвыражения входят в него однажды.
+ * Значения узлов вычисляются теми же операциями {@link Operations}, что и при обычном вычислении, поэтому ошибки совпадают.
+ * Для каждого узла, зависящего от выбранных переменных, находятся частные производные по его непосредственным аргументам,
+ * после чего они собираются по правилу дифференцирования сложной функции:
+ * <ul>
+ *     <li>прямой режим за один проход переносит от аргументов к узлу векторы производных по всем выбранным переменным;</li>
+ *     <li>обратный режим после прохода вычисления значений за один обратный проход переносит от корня к аргументам
+ *     производную результата по узлу, поэтому его стоимость не зависит от количества переменных.</li>
+ * </ul>
+ * Производные встроенных функций известны. Пользовательская функция дифференцируема, если при регистрации
+ * для неё заданы производные; тогда она хранится в дереве одной из обёрток {@link Unary}, {@link Binary}, {@link Nary}.
+ * Производная функции без заданных производных требуется, только если её аргументы зависят от выбранных переменных.
+ */
+final class Differentiator {
+
+    /**
+     * Функция одного аргумента с производной
+     */
+    record Unary(DoubleUnaryOperator function, DoubleUnaryOperator derivative) implements DoubleUnaryOperator {
+        @Override
+        public double applyAsDouble(double operand) {
+            return function.applyAsDouble(operand);
+        }
+    }
+
+    /**
+     * Функция двух аргументов с частными производными по каждому из них
+     */
+    record Binary(DoubleBinaryOperator function, DoubleBinaryOperator left, DoubleBinaryOperator right) implements DoubleBinaryOperator {
+        @Override
+        public double applyAsDouble(double left, double right) {
+            return function.applyAsDouble(left, right);
+        }
+    }
+
+    /**
+     * Функция нескольких аргументов с частными производными по каждому аргументу
+     */
+    record Nary(DoubleNaryOperator function, DoubleNaryOperator[] partials) implements DoubleNaryOperator {
+        @Override
+        public double applyAsDouble(double[] arguments) {
+            return function.applyAsDouble(arguments);
+        }
+    }
+
+    private static final double LN_10 = Math.log(10);
+
+    Differentiator(Node root) {
+        Postorder order = Postorder.of(root);
+        nodes = order.nodes();
+        children = order.children();
+    }
+
+    /**
+     * Вычисляет значение и производные прямым режимом
+     * @param variables Хранилище переменных
+     * @param names Переменные, по которым берутся производные
+     * @return Значение и частные производные
+     * @throws ExpressionException Выбрасывается при ошибках вычисления или отсутствии производной функции
+     */
+    Gradient forward(VariableStore variables, String[] names) throws ExpressionException {
+        int[] columns = columns(names);
+        boolean[] depends = depends(columns);
+        double[] values = values(variables);
+        int root = nodes.length - 1;
+        double value = Operations.result(values[root]);
+        int width = names.length;
+        //tangents[i * width + j] - производная узла i по переменной j
+        double[] tangents = new double[nodes.length * width];
+        for (int i = 0; i < nodes.length; i++) {
+            if (!depends[i])
+                continue;
+            if (columns[i] >= 0) {
+                tangents[i * width + columns[i]] = 1;
+                continue;
+            }
+            double[] local = localPartials(i, values);
+            for (int k = 0; k < children[i].length; k++) {
+                int child = children[i][k];
+                if (!depends[child])
+                    continue;
+                for (int j = 0; j < width; j++) {
+                    double tangent = tangents[child * width + j];
+                    //нулевая производная аргумента не должна давать NaN при бесконечной частной производной
+                    if (tangent != 0)
+                        tangents[i * width + j] += local[k] * tangent;
+                }
+            }
+        }
+        return new Gradient(value, names, Arrays.copyOfRange(tangents, root * width, root * width + width));
+    }
+
+    /**
+     * Вычисляет значение и производные обратным режимом
+     * @param variables Хранилище переменных
+     * @param names Переменные, по которым берутся производные
+     * @return Значение и частные производные
+     * @throws ExpressionException Выбрасывается при ошибках вычисления или отсутствии производной функции
+     */
+    Gradient reverse(VariableStore variables, String[] names) throws ExpressionException {
+        int[] columns = columns(names);
+        boolean[] depends = depends(columns);
+        double[] values = values(variables);
+        double value = Operations.result(values[nodes.length - 1]);
+        //adjoints[i] - производная результата по узлу i
+        double[] adjoints = new double[nodes.length];
+        double[] partials = new double[names.length];
+        adjoints[nodes.length - 1] = 1;
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            if (!depends[i])
+                continue;
+            if (columns[i] >= 0) {
+                partials[columns[i]] += adjoints[i];
+                continue;
+            }
+            double[] local = localPartials(i, values);
+            if (adjoints[i] == 0)
+                continue;
+            for (int k = 0; k < children[i].length; k++)
+                if (depends[children[i][k]])
+                    adjoints[children[i][k]] += adjoints[i] * local[k];
+        }
+        return new Gradient(value, names, partials);
+    }
+
+    /**
+     * Сопоставляет узлам переменных номера выбранных переменных
+     * @return Номер выбранной переменной для каждого узла или -1
+     */
+    private int[] columns(String[] names) {
+        Map<String, Integer> selected = new HashMap<>();
+        for (int j = 0; j < names.length; j++)
+            if (selected.put(Objects.requireNonNull(names[j]), j) != null)
+                throw new IllegalArgumentException("Переменная указана более одного раза: " + names[j]);
+        int[] columns = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+            columns[i] = nodes[i] instanceof Node.Variable variable ? selected.getOrDefault(variable.name(), -1) : -1;
+        return columns;
+    }
+
+    private boolean[] depends(int[] columns) {
+        boolean[] depends = new boolean[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            depends[i] = columns[i] >= 0;
+            for (int child : children[i])
+                depends[i] |= depends[child];
+        }
+        return depends;
+    }
+
+    private double[] values(VariableStore variables) throws ExpressionException {
+        double[] values = new double[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            int[] args = children[i];
+            if (node instanceof Node.Literal literal)
+                values[i] = literal.value();
+            else if (node instanceof Node.Constant constant)
+                values[i] = constant.value();
+            else if (node instanceof Node.Variable variable)
+                values[i] = Operations.variable(variables, variable.slot());
+            else if (node instanceof Node.Negation)
+                values[i] = -values[args[0]];
+            else if (node instanceof Node.Binary binary)
+                values[i] = Operations.binary(binary.operator(), values[args[0]], values[args[1]]);
+            else if (node instanceof Node.Call call)
+                values[i] = call.function().applyAsDouble(values[args[0]]);
+            else if (node instanceof Node.BinaryCall call)
+                values[i] = call.function().applyAsDouble(values[args[0]], values[args[1]]);
+            else if (node instanceof Node.NaryCall call)
+                values[i] = call.function().applyAsDouble(arguments(args, values));
+        }
+        return values;
+    }
+
+    private static double[] arguments(int[] args, double[] values) {
+        double[] arguments = new double[args.length];
+        for (int k = 0; k < args.length; k++)
+            arguments[k] = values[args[k]];
+        return arguments;
+    }
+
+    /**
+     * Находит частные производные узла по его непосредственным аргументам
+     * @param i Номер узла
+     * @param values Значения узлов
+     * @return Производные в порядке аргументов
+     * @throws ExpressionException Выбрасывается, если для пользовательской функции не задана производная
+     */
+    private double[] localPartials(int i, double[] values) throws ExpressionException {
+        Node node = nodes[i];
+        int[] args = children[i];
+        if (node instanceof Node.Negation)
+            return new double[]{-1};
+        if (node instanceof Node.Binary binary) {
+            double a = values[args[0]];
+            double b = values[args[1]];
+            return switch (binary.operator()) {
+                case '+' -> new double[]{1, 1};
+                case '-' -> new double[]{1, -1};
+                case '*' -> new double[]{b, a};
+                case '/' -> new double[]{1 / b, -a / (b * b)};
+                //при нулевом основании производная по показателю равна пределу a^b * ln(a) при a -> +0, то есть нулю
+                default -> new double[]{b * Math.pow(a, b - 1), a > 0 ? values[i] * Math.log(a) : 0};
+            };
+        }
+        if (node instanceof Node.Call call) {
+            double x = values[args[0]];
+            DoubleUnaryOperator function = call.function();
+            if (function == BuiltinFunctions.SIN)
+                return new double[]{Math.cos(x)};
+            if (function == BuiltinFunctions.COS)
+                return new double[]{-Math.sin(x)};
+            if (function == BuiltinFunctions.TAN) {
+                double cos = Math.cos(x);
+                return new double[]{1 / (cos * cos)};
+            }
+            if (function == BuiltinFunctions.LOG)
+                return new double[]{1 / x};
+            if (function == BuiltinFunctions.LOG10)
+                return new double[]{1 / (x * LN_10)};
+            if (function instanceof Unary unary)
+                return new double[]{unary.derivative().applyAsDouble(x)};
+        }
+        else if (node instanceof Node.BinaryCall call && call.function() instanceof Binary binary) {
+            double a = values[args[0]];
+            double b = values[args[1]];
+            return new double[]{binary.left().applyAsDouble(a, b), binary.right().applyAsDouble(a, b)};
+        }
+        else if (node instanceof Node.NaryCall call && call.function() instanceof Nary nary) {
+            double[] partials = new double[args.length];
+            for (int k = 0; k < args.length; k++)
+                partials[k] = nary.partials()[k].applyAsDouble(arguments(args, values));
+            return partials;
+        }
+        throw new ExpressionException(Reason.NO_DERIVATIVE, "Для функции " + ((Node.FunctionCall) node).name() + " не задана производная");
+    }
+
+    /**
+     * Узлы в обратном польском порядке; корень - последний
+     */
+    private final Node[] nodes;
+
+    /**
+     * Номера аргументов каждого узла
+     */
+    private final int[][] children;
+}
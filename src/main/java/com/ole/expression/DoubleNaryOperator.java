@@ -0,0 +1,17 @@
+package com.ole.expression;
+
+/**
+ * Функция нескольких вещественных аргументов, которые передаются массивом.
+ * При каждом вызове создаётся новый массив, поэтому функция может изменять и сохранять его.
+ * @see ExpressionSolver#setFunction(String, int, DoubleNaryOperator)
+ */
+@FunctionalInterface
+public interface DoubleNaryOperator {
+
+    /**
+     * Вычисляет функцию
+     * @param arguments Аргументы в порядке записи в выражении
+     * @return Значение функции
+     */
+    double applyAsDouble(double[] arguments);
+}
@@ -0,0 +1,18 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.*;
+
+/**
+ * Способ вычисления скомпилированного выражения: интерпретатор {@link StackProgram}
+ * или класс, сгенерированный {@link JitCompiler}.
+ */
+interface Evaluator {
+
+    /**
+     * Вычисляет значение выражения без проверки итогового результата
+     * @param variables Хранилище переменных
+     * @return Значение выражения
+     * @throws ExpressionException Выбрасывается при ошибках в вычислении
+     */
+    double evaluate(VariableStore variables) throws ExpressionException;
+}
@@ -0,0 +1,148 @@
+package com.ole.expression;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограниченный кэш скомпилированных выражений по исходной строке с вытеснением давно не использованных (приближённый LRU).
+ * <p>
+ * Чтение не берёт блокировок: выражения лежат в {@link ConcurrentHashMap}, а обращение только отмечает в записи
+ * текущее значение часов кэша. Часы продвигаются при каждом добавлении, поэтому запись, к которой обращались после
+ * последнего добавления, считается использованной недавно. Добавление и очистка выполняются под блокировкой кэша;
+ * при переполнении вытесняются записи с самыми старыми отметками, сразу пачкой в восьмую часть ёмкости,
+ * чтобы сортировка записей приходилась не на каждое добавление.
+ * <p>
+ * Скомпилированное выражение ссылается на функции, действовавшие при компиляции, поэтому при изменении функций
+ * кэш очищается целиком. Чтобы выражение, которое компилировалось во время очистки, не вернулось в кэш,
+ * каждая очистка увеличивает номер поколения, и выражение сохраняется только в том поколении, в котором начиналась компиляция.
+ */
+final class ExpressionCache {
+
+    ExpressionCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Ищет выражение в кэше
+     * @param source Исходная строка выражения
+     * @return Скомпилированное выражение или null, если его нет в кэше
+     */
+    CompiledExpression get(String source) {
+        Entry entry = entries.get(source);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        long now = clock;
+        //запись в общую память только при первом обращении после добавления
+        if (entry.accessed != now)
+            entry.accessed = now;
+        return entry.compiled;
+    }
+
+    /**
+     * Возвращает текущее поколение кэша. Его нужно запомнить перед компиляцией и передать в {@link #put}.
+     * @return Номер поколения
+     */
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * Сохраняет выражение, если кэш не очищался с начала его компиляции
+     * @param source Исходная строка выражения
+     * @param compiled Скомпилированное выражение
+     * @param generation Поколение кэша на момент начала компиляции
+     */
+    synchronized void put(String source, CompiledExpression compiled, long generation) {
+        if (capacity <= 0 || generation != this.generation)
+            return;
+        entries.put(source, new Entry(compiled, ++clock));
+        //обращения после добавления получают более позднюю отметку, чем добавленная запись
+        clock++;
+        if (entries.size() > capacity)
+            evict(entries.size() - capacity + capacity / 8);
+    }
+
+    /**
+     * Удаляет все выражения из кэша
+     */
+    synchronized void invalidateAll() {
+        generation++;
+        if (!entries.isEmpty())
+            invalidations.increment();
+        entries.clear();
+    }
+
+    /**
+     * Изменяет наибольшее количество выражений в кэше, вытесняя лишние
+     * @param capacity Наибольшее количество выражений; 0 отключает кэш
+     */
+    synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        evict(entries.size() - capacity);
+    }
+
+    /**
+     * Возвращает снимок счётчиков кэша
+     * @return Счётчики кэша
+     */
+    CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), entries.size(), capacity);
+    }
+
+    /**
+     * Вытесняет записи с самыми старыми отметками обращений
+     * @param count Количество вытесняемых записей
+     */
+    private void evict(int count) {
+        if (count <= 0)
+            return;
+        List<Map.Entry<String, Entry>> oldest = new ArrayList<>(entries.entrySet());
+        oldest.sort(Comparator.comparingLong(entry -> entry.getValue().accessed));
+        for (int i = 0; i < count && i < oldest.size(); i++) {
+            entries.remove(oldest.get(i).getKey());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Выражение и отметка часов кэша при последнем обращении к нему
+     */
+    private static final class Entry {
+        Entry(CompiledExpression compiled, long accessed) {
+            this.compiled = compiled;
+            this.accessed = accessed;
+        }
+
+        final CompiledExpression compiled;
+        volatile long accessed;
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Часы кэша; изменяются только под блокировкой кэша
+     */
+    private volatile long clock;
+
+    /**
+     * Наибольшее количество выражений в кэше
+     */
+    private volatile int capacity;
+
+    /**
+     * Номер поколения, увеличивается при каждой очистке
+     */
+    private volatile long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+}
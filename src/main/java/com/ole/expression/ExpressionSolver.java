@@ -1,9 +1,17 @@
 package com.ole.expression;
 
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.ForkJoinPool;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 
 import com.ole.expression.exceptions.*;
+import com.ole.expression.exceptions.ExpressionException.Reason;
 
 /**
  * Класс для вычисления выражений.
@@ -17,46 +25,382 @@ public class ExpressionSolver {
      * Устанавливает стартовые списки функций и операторов
      */
     public ExpressionSolver(){
+        this(new VariableTable());
+    }
+
+    /**
+     * Устанавливает стартовые списки функций и операторов и заданное хранилище переменных
+     * @param variables Хранилище переменных
+     */
+    ExpressionSolver(VariableStore variables){
 
-        variables = new HashMap<>();
+        this.variables = variables;
 
-        constants = new HashMap<>();
-        constants.put("PI", Math.PI);
-        constants.put("E", Math.E);
+        cache = new ExpressionCache(DEFAULT_CACHE_CAPACITY);
 
+        constants = Map.of(
+                "PI", Math.PI,
+                "E", Math.E);
 
-        functions = new HashMap<>();
-        functions.put("sin", Math::sin);
-        functions.put("cos", Math::cos);
-        functions.put("tan", Math::tan);
-        functions.put("log", Math::log);
-        functions.put("log10", Math::log10);
+        Map<String, FunctionDefinition> builtins = new HashMap<>();
+        BuiltinFunctions.ALL.forEach((name, function) -> builtins.put(name, FunctionDefinition.of(function)));
+        functions = Map.copyOf(builtins);
     }
 
     /**
      * Основной метод вычисления математического выражения. Умеет добавлять новые переменные.
+     * Разобранные выражения сохраняются в кэше, поэтому повторное вычисление той же строки не разбирает её заново.
      * @param expression Строка математического выражения, которая может также состоять из 1 присваивания для сохраниения значения переменной.
      * @return Значениевыражения
      * @throws ExpressionException Выбрасывается при ошибках в вычислении результата выражения или присваивания значения переменной
      */
     public double evaluate(String expression) throws ExpressionException {
-        var expressions = expression.split("=");
-        if(expressions.length>2)
-            throw new ExpressionException("Кол-во присваиваний больше 1");
-        else if(expressions.length==1)
-            return calculate(expressions[0]);
-        else if(expressions.length==0)
-            throw new ExpressionException("Неверное выражение");
-        else{
-            String variable=expressions[0];
-            if(!isValidName(variable))
-                throw new ExpressionException("Неподходящее имя переменной: " + variable);
-            if(functions.containsKey(variable))
-                throw new ExpressionException("Имя переменной совпадает со значением функции: " + variable);
-            double result= calculate(expressions[1]);
-            variables.put(variable, result);
-            return result;
+        CompiledExpression compiled = cache.get(expression);
+        if(compiled == null){
+            long generation = cache.generation();
+            compiled = compile(expression);
+            cache.put(expression, compiled, generation);
+        }
+        return compiled.evaluate();
+    }
+
+    /**
+     * Разбирает выражение один раз и возвращает его скомпилированную форму для многократного вычисления.
+     * Функции и константы определяются в момент компиляции, значения переменных - в момент вычисления.
+     * Постоянные части выражения вычисляются сразу, поэтому ошибки в них (например, деление на литерал 0)
+     * выбрасываются уже при компиляции.
+     * @param expression Строка математического выражения, которая может также состоять из 1 присваивания.
+     * @return Скомпилированное выражение
+     * @throws ExpressionException Выбрасывается при ошибках разбора выражения или имени переменной
+     */
+    public CompiledExpression compile(String expression) throws ExpressionException {
+        return compile(expression, expression);
+    }
+
+    /**
+     * Вычисляет выражение, заданное последовательностью символов, не превращая её в строку.
+     * Подходит для потоковой обработки, когда выражение лежит в повторно используемом буфере:
+     * последовательность читается только во время вызова, а разобранное выражение не кэшируется.
+     * @param expression Математическое выражение, которое может также состоять из 1 присваивания
+     * @return Значение выражения
+     * @throws ExpressionException Выбрасывается при ошибках в вычислении результата выражения или присваивания значения переменной
+     */
+    public double evaluate(CharSequence expression) throws ExpressionException {
+        return compile(expression, reactive ? expression.toString() : null).evaluate();
+    }
+
+    /**
+     * Выполняет присваивание скомпилированного выражения; в реактивном режиме оно запоминается как формула переменной
+     */
+    private double assign(CompiledExpression compiled) throws ExpressionException {
+        if(reactive)
+            return tracker.define(compiled);
+        return compiled.assign();
+    }
+
+    /**
+     * Разбирает выражение с необязательным присваиванием
+     * @param expression Математическое выражение
+     * @param source Исходная строка, которую запомнит скомпилированное выражение, либо null
+     * @return Скомпилированное выражение
+     * @throws ExpressionException Выбрасывается при ошибках разбора выражения или имени переменной
+     */
+    private CompiledExpression compile(CharSequence expression, String source) throws ExpressionException {
+        if(!metrics.isEnabled())
+            return compileExpression(expression, source);
+        long start = System.nanoTime();
+        try {
+            CompiledExpression compiled = compileExpression(expression, source);
+            metrics.parsed(System.nanoTime() - start);
+            return compiled;
+        } catch (ExpressionException ex) {
+            metrics.failed(ex);
+            throw ex;
+        }
+    }
+
+    private CompiledExpression compileExpression(CharSequence expression, String source) throws ExpressionException {
+        var functions = this.functions;
+        //как и String.split("="), не учитываем знаки = в конце выражения
+        int end = expression.length();
+        while(end > 0 && expression.charAt(end - 1) == '=')
+            end--;
+        if(end == 0 && expression.length() > 0)
+            throw new ExpressionException(Reason.SYNTAX, "Неверное выражение");
+        int assignment = -1;
+        for (int i = 0; i < end; i++) {
+            if(expression.charAt(i) == '='){
+                if(assignment >= 0)
+                    throw new ExpressionException(Reason.SYNTAX, "Кол-во присваиваний больше 1");
+                assignment = i;
+            }
+        }
+        if(assignment < 0) {
+            Node tree = parse(expression, 0, end, functions);
+            return new CompiledExpression(source, null, Optimizer.optimize(tree), () -> tree,
+                    resolved(tree, functions), variables, jitThreshold, metrics, this::assign);
+        }
+
+        int nameStart = 0;
+        int nameEnd = assignment;
+        while(nameStart < nameEnd && expression.charAt(nameStart) <= ' ')
+            nameStart++;
+        while(nameEnd > nameStart && expression.charAt(nameEnd - 1) <= ' ')
+            nameEnd--;
+        if(!isValidName(expression, nameStart, nameEnd))
+            throw new ExpressionException(Reason.INVALID_NAME, "Неподходящее имя переменной: " + expression.subSequence(nameStart, nameEnd));
+        String variable = symbols.intern(expression, nameStart, nameEnd);
+        if(functions.containsKey(variable))
+            throw new ExpressionException(Reason.INVALID_NAME, "Имя переменной совпадает со значением функции: " + variable);
+        Node tree = parse(expression, assignment + 1, end, functions);
+        return new CompiledExpression(source, variable, Optimizer.optimize(tree), () -> tree,
+                resolved(tree, functions), variables, jitThreshold, metrics, this::assign);
+    }
+
+    /**
+     * Сохраняет скомпилированные выражения вместе с переменными и константами решателя в двоичный файл,
+     * чтобы при следующем запуске загрузить их методом {@link #loadCompiled(Path)} без разбора строк.
+     * Функции сохраняются только по имени.
+     * @param file Путь к файлу; существующий файл перезаписывается
+     * @param expressions Выражения, скомпилированные этим решателем
+     * @throws IOException Выбрасывается при ошибке записи
+     * @throws IllegalArgumentException Выбрасывается, если выражение скомпилировано другим решателем
+     * или выражения скомпилированы с разными функциями под одним именем
+     */
+    public void saveCompiled(Path file, Collection<CompiledExpression> expressions) throws IOException {
+        for (CompiledExpression expression : expressions)
+            if(expression.variables() != variables)
+                throw new IllegalArgumentException("Выражение скомпилировано другим решателем: " + expression);
+        CompiledStore.write(file, expressions, constants, variables);
+    }
+
+    /**
+     * Загружает выражения, сохранённые методом {@link #saveCompiled(Path, Collection)}.
+     * Файл отображается в память и не разбирается заново; значения сохранённых переменных присваиваются решателю,
+     * а выражения с исходной строкой попадают в кэш, так что {@link #evaluate(String)} их тоже не разбирает.
+     * Если файл не прошёл проверку, решатель не изменяется, кроме появления пустых ячеек переменных.
+     * @param file Путь к файлу
+     * @return Выражения в порядке сохранения
+     * @throws IOException Выбрасывается при ошибке чтения
+     * @throws ExpressionException Выбрасывается, если файл повреждён, имеет другую версию формата,
+     * использует функцию, не зарегистрированную в решателе, переопределённую встроенную функцию или константу с другим значением
+     */
+    public List<CompiledExpression> loadCompiled(Path file) throws IOException, ExpressionException {
+        var functions = this.functions;
+        CompiledStore.Contents contents = CompiledStore.read(file, functions, constants, variables, symbols);
+        for (String name : contents.variables().keySet())
+            if(!isValidName(name) || constants.containsKey(name) || functions.containsKey(name))
+                throw new ExpressionException(Reason.INVALID_STORE, "Имя переменной совпадает с именем функции или константы: " + name);
+        for (CompiledStore.Entry entry : contents.entries())
+            if(entry.target() != null && functions.containsKey(entry.target()))
+                throw new ExpressionException(Reason.INVALID_STORE, "Имя переменной совпадает со значением функции: " + entry.target());
+
+        contents.variables().forEach((name, bits) -> {
+            if(bits != VariableStore.UNDEFINED)
+                setVariable(name, Double.longBitsToDouble(bits));
+        });
+        long generation = cache.generation();
+        List<CompiledExpression> result = new ArrayList<>(contents.entries().size());
+        for (CompiledStore.Entry entry : contents.entries()) {
+            //в файле хранится дерево со свёрнутыми константами, дерево без свёртки строится разбором исходной строки
+            CompiledExpression compiled = new CompiledExpression(entry.source(), entry.target(), entry.root(),
+                    () -> exactTree(entry.source()), entry.functions(), variables, jitThreshold, metrics, this::assign);
+            if(entry.source() != null)
+                cache.put(entry.source(), compiled, generation);
+            result.add(compiled);
+        }
+        return result;
+    }
+
+    /**
+     * Находит определения функций, которые вызывает дерево до свёртки констант
+     * @param tree Дерево выражения без свёртки
+     * @param functions Функции, которыми разбиралось выражение
+     * @return Названия и определения функций в порядке первого вызова
+     */
+    private static Map<String, FunctionDefinition> resolved(Node tree, Map<String, FunctionDefinition> functions) {
+        Set<String> names = Node.functionNames(tree);
+        if (names.isEmpty())
+            return Map.of();
+        Map<String, FunctionDefinition> resolved = new LinkedHashMap<>();
+        for (String name : names)
+            resolved.put(name, functions.get(name));
+        return resolved;
+    }
+
+    /**
+     * Разбирает исходную строку загруженного выражения без свёртки констант
+     * @param source Исходная строка
+     * @return Дерево выражения
+     * @throws ExpressionException Выбрасывается, если исходная строка не сохранена или не разбирается текущими функциями
+     */
+    private Node exactTree(String source) throws ExpressionException {
+        if(source == null)
+            throw new ExpressionException(Reason.OTHER, "Исходная строка выражения не сохранена");
+        return compileExpression(source, null).exactRoot();
+    }
+
+    /**
+     * Вычисляет сценарий присваиваний в общем пуле потоков
+     * @param script Строки сценария вида var = выражение; пустые строки пропускаются
+     * @return Значения присвоенных переменных в порядке строк сценария
+     * @throws ExpressionException Выбрасывается при ошибках разбора или вычисления, повторном присваивании переменной
+     * и циклической зависимости между переменными
+     * @see #evaluateScript(List, ForkJoinPool)
+     */
+    public Map<String, Double> evaluateScript(List<String> script) throws ExpressionException {
+        return evaluateScript(script, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Вычисляет сценарий присваиваний с учётом зависимостей между ними.
+     * Присваивания, которые не зависят друг от друга, вычисляются параллельно, а переменная вычисляется
+     * только после всех переменных сценария, которые она читает, независимо от порядка строк.
+     * Переменные, которые не присваиваются в сценарии, берутся из решателя.
+     * Если при вычислении возникла ошибка, переменные, вычисленные до неё, остаются присвоенными.
+     * @param script Строки сценария вида var = выражение; пустые строки пропускаются
+     * @param pool Пул потоков для параллельного вычисления
+     * @return Значения присвоенных переменных в порядке строк сценария
+     * @throws ExpressionException Выбрасывается при ошибках разбора или вычисления, повторном присваивании переменной
+     * и циклической зависимости между переменными
+     */
+    public Map<String, Double> evaluateScript(List<String> script, ForkJoinPool pool) throws ExpressionException {
+        List<CompiledExpression> expressions = new ArrayList<>(script.size());
+        for (String line : script) {
+            if(line.isBlank())
+                continue;
+            CompiledExpression expression = compile(line);
+            if(expression.getTarget() == null)
+                throw failed(new ExpressionException(Reason.INVALID_SCRIPT, "Строка сценария не содержит присваивания: " + line));
+            expressions.add(expression);
+        }
+        ScriptEvaluator evaluator;
+        try {
+            evaluator = new ScriptEvaluator(expressions, reactive ? tracker : null);
+        } catch (ExpressionException ex) {
+            throw failed(ex);
         }
+        return evaluator.evaluate(pool);
+    }
+
+    /**
+     * Включает или выключает реактивный режим.
+     * В реактивном режиме присваивание var = выражение через {@link #evaluate(String)}, {@link CompiledExpression#evaluate()}
+     * или строку сценария {@link #evaluateScript(List)} запоминается как формула переменной.
+     * Когда переменная меняется через {@link #setVariable(String, Double)} или новое присваивание,
+     * пересчитываются только формулы, которые прямо или косвенно от неё зависят, в порядке зависимостей,
+     * а слушатели получают каждое новое значение. Присваивание, замыкающее цикл между формулами, отклоняется.
+     * Значение, установленное через setVariable, заменяет формулу переменной.
+     * Выключение режима забывает все формулы.
+     * @param reactive true, чтобы включить режим
+     */
+    public void setReactive(boolean reactive) {
+        this.reactive = reactive;
+        if(!reactive)
+            tracker.clear();
+    }
+
+    /**
+     * Проверяет, включён ли реактивный режим
+     * @return true, если режим включён
+     */
+    public boolean isReactive() {
+        return reactive;
+    }
+
+    /**
+     * Добавляет слушателя изменений переменных реактивного режима
+     * @param listener Слушатель
+     */
+    public void addListener(VariableListener listener) {
+        tracker.addListener(listener);
+    }
+
+    /**
+     * Удаляет слушателя изменений переменных
+     * @param listener Слушатель
+     */
+    public void removeListener(VariableListener listener) {
+        tracker.removeListener(listener);
+    }
+
+    /**
+     * Включает или выключает сбор показателей работы решателя: длительностей разбора и вычисления,
+     * количества вызовов функций и ошибок по причинам. Выключенный сбор почти ничего не стоит.
+     * Счётчики кэша разобранных выражений ведутся всегда.
+     * @param enabled true, чтобы включить сбор
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        metrics.setEnabled(enabled);
+    }
+
+    /**
+     * Проверяет, включён ли сбор показателей
+     * @return true, если сбор включён
+     */
+    public boolean isMetricsEnabled() {
+        return metrics.isEnabled();
+    }
+
+    /**
+     * Возвращает снимок показателей работы решателя
+     * @return Снимок показателей
+     */
+    public MetricsSnapshot getMetrics() {
+        return metrics.snapshot(cache.stats());
+    }
+
+    /**
+     * Обнуляет показатели работы решателя, кроме счётчиков кэша
+     */
+    public void resetMetrics() {
+        metrics.reset();
+    }
+
+    /**
+     * Регистрирует показатели решателя в платформенном MBean-сервере
+     * под именем com.ole.expression:type=ExpressionSolver,name=&lt;name&gt;
+     * @param name Имя решателя
+     * @return Имя зарегистрированного MBean, по которому его можно удалить
+     * @throws JMException Выбрасывается, если MBean с таким именем уже зарегистрирован
+     */
+    public ObjectName registerMetrics(String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.ole.expression:type=ExpressionSolver,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new SolverMetrics(this), objectName);
+        return objectName;
+    }
+
+    /**
+     * Устанавливает порог компиляции выражений в байткод.
+     * Выражение, вычисленное через {@link CompiledExpression#evaluate()} указанное число раз, переводится
+     * в сгенерированный класс JVM. Если сгенерировать класс не удалось, выражение продолжает вычисляться интерпретатором.
+     * Порог действует для выражений, скомпилированных после его установки.
+     * @param threshold Количество вычислений до компиляции в байткод; 0 отключает компиляцию
+     */
+    public void setJitThreshold(int threshold) {
+        if(threshold < 0)
+            throw new IllegalArgumentException("Порог компиляции не может быть отрицательным: " + threshold);
+        jitThreshold = threshold;
+        cache.invalidateAll();
+    }
+
+    /**
+     * Устанавливает наибольшее количество разобранных выражений в кэше {@link #evaluate(String)}.
+     * При переполнении вытесняются выражения, которые дольше всего не использовались.
+     * @param capacity Наибольшее количество выражений; 0 отключает кэш
+     */
+    public void setCacheCapacity(int capacity) {
+        if(capacity < 0)
+            throw new IllegalArgumentException("Размер кэша не может быть отрицательным: " + capacity);
+        cache.setCapacity(capacity);
+    }
+
+    /**
+     * Возвращает счётчики кэша разобранных выражений
+     * @return Снимок счётчиков кэша
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
     }
 
     /**
@@ -68,15 +412,90 @@ public class ExpressionSolver {
     }
 
     /**
-     * Пытается установить новую функцию
+     * Пытается установить новую функцию одного аргумента
+     * @param name Название функции
+     * @param function Функция
+     * @return Результат операции
+     */
+    public boolean setFunction(String name, DoubleUnaryOperator function) {
+        return register(name, FunctionDefinition.of(function));
+    }
+
+    /**
+     * Пытается установить новую функцию двух аргументов, например max(a, b)
+     * @param name Название функции
+     * @param function Функция
+     * @return Результат операции
+     */
+    public boolean setFunction(String name, DoubleBinaryOperator function) {
+        return register(name, FunctionDefinition.of(function));
+    }
+
+    /**
+     * Пытается установить новую функцию с заданным количеством аргументов.
+     * Аргументы передаются функции в новом массиве при каждом вызове.
+     * @param name Название функции
+     * @param arity Количество аргументов
+     * @param function Функция
+     * @return Результат операции
+     * @throws IllegalArgumentException Выбрасывается, если количество аргументов меньше 1
+     */
+    public boolean setFunction(String name, int arity, DoubleNaryOperator function) {
+        if(arity < 1)
+            throw new IllegalArgumentException("Количество аргументов функции должно быть положительным: " + arity);
+        return register(name, FunctionDefinition.of(arity, function));
+    }
+
+    /**
+     * Пытается установить новую функцию одного аргумента вместе с её производной,
+     * которая используется при автоматическом дифференцировании
+     * @param name Название функции
+     * @param function Функция
+     * @param derivative Производная функции
+     * @return Результат операции
+     * @see CompiledExpression#gradient(DifferentiationMode, String...)
+     */
+    public boolean setFunction(String name, DoubleUnaryOperator function, DoubleUnaryOperator derivative) {
+        return register(name, FunctionDefinition.of(new Differentiator.Unary(function, derivative)));
+    }
+
+    /**
+     * Пытается установить новую функцию двух аргументов вместе с частными производными по каждому из них
      * @param name Название функции
      * @param function Функция
+     * @param leftDerivative Частная производная по первому аргументу
+     * @param rightDerivative Частная производная по второму аргументу
      * @return Результат операции
      */
-    public boolean setFunction(String name, Function<Double,Double> function) {
-        if(constants.containsKey(name)||variables.containsKey(name))
+    public boolean setFunction(String name, DoubleBinaryOperator function,
+                               DoubleBinaryOperator leftDerivative, DoubleBinaryOperator rightDerivative) {
+        return register(name, FunctionDefinition.of(new Differentiator.Binary(function, leftDerivative, rightDerivative)));
+    }
+
+    /**
+     * Пытается установить новую функцию с заданным количеством аргументов вместе с частными производными
+     * @param name Название функции
+     * @param arity Количество аргументов
+     * @param function Функция
+     * @param partialDerivatives Частные производные по каждому аргументу, по одной на аргумент
+     * @return Результат операции
+     * @throws IllegalArgumentException Выбрасывается, если количество аргументов меньше 1 или не совпадает с количеством производных
+     */
+    public boolean setFunction(String name, int arity, DoubleNaryOperator function, DoubleNaryOperator[] partialDerivatives) {
+        if(partialDerivatives.length != arity)
+            throw new IllegalArgumentException("Количество производных " + partialDerivatives.length + " не совпадает с количеством аргументов " + arity);
+        return setFunction(name, arity, new Differentiator.Nary(function, partialDerivatives.clone()));
+    }
+
+    private synchronized boolean register(String name, FunctionDefinition definition) {
+        if(constants.containsKey(name)||variables.contains(name))
             return false;
-        functions.put(name,function);
+        //копирование при записи: читатели продолжают пользоваться прежним словарём без блокировок
+        Map<String, FunctionDefinition> updated = new HashMap<>(functions);
+        updated.put(name, definition);
+        functions = Map.copyOf(updated);
+        //разобранные ранее выражения могли трактовать это имя как переменную
+        cache.invalidateAll();
         return true;
     }
 
@@ -85,12 +504,29 @@ public class ExpressionSolver {
      * @return Список переменных
      */
     public String[] getVariables(){
-        String[] result = new String[variables.size()];
-        var keys=variables.keySet().toArray(new String[0]);
-        for (int i = 0; i < variables.size(); i++) {
-            result[i] = keys[i] + " : " + variables.get(keys[i]);
+        return getVariables(0, Integer.MAX_VALUE).variables().toArray(new String[0]);
+    }
+
+    /**
+     * Возвращает часть списка переменных, не собирая весь список.
+     * Позиция страницы - номер ячейки хранилища, поэтому каждая страница читает только свои ячейки:
+     * обход начинается с позиции 0 и продолжается с {@link VariablePage#next()} предыдущей страницы.
+     * Переменные перечисляются в порядке появления; переменные, добавленные во время обхода, попадают в конец.
+     * @param cursor Позиция начала страницы: 0 или next предыдущей страницы
+     * @param limit Наибольшее количество переменных на странице
+     * @return Страница переменных в формате «имя : значение» и позиция следующей страницы
+     * @throws IllegalArgumentException Выбрасывается, если cursor или limit отрицательны
+     */
+    public VariablePage getVariables(int cursor, int limit){
+        if(cursor < 0 || limit < 0)
+            throw new IllegalArgumentException("Недопустимая страница переменных: cursor " + cursor + ", limit " + limit);
+        List<String> result = new ArrayList<>(Math.min(limit, 1024));
+        int slot = cursor;
+        for (; slot < variables.size() && result.size() < limit; slot++) {
+            if(variables.isDefined(slot))
+                result.add(variables.name(slot) + " : " + variables.get(slot));
         }
-        return result;
+        return new VariablePage(result, slot < variables.size() ? slot : -1);
     }
 
     /**
@@ -102,7 +538,9 @@ public class ExpressionSolver {
     public boolean setVariable(String name, Double value){
         if(!isValidName(name) || constants.containsKey(name) || functions.containsKey(name))
             return false;
-        variables.put(name, value);
+        variables.set(variables.slotOf(name), value);
+        if(reactive)
+            tracker.assigned(name, value);
         return true;
     }
 
@@ -120,15 +558,19 @@ public class ExpressionSolver {
     }
 
     /**
-     * Список стандартных операторов
-     * _ является репрезентацией унарного минуса
+     * Показатели работы решателя
      */
-    private final List<String> standartOperators = List.of(new String[]{"(",")","+","-","*","/","^","_"});
+    private final Metrics metrics = new Metrics();
 
     /**
-     * Словарь переменных
+     * Таблица имён, встречавшихся в выражениях
      */
-    private final Map<String, Double> variables;
+    private final SymbolTable symbols = new SymbolTable();
+
+    /**
+     * Хранилище переменных
+     */
+    private final VariableStore variables;
 
     /**
      * Список констант
@@ -136,9 +578,45 @@ public class ExpressionSolver {
     private final Map<String, Double> constants;
 
     /**
-     * Список функций
+     * Список функций. Словарь неизменяем и заменяется целиком при добавлении функции.
+     */
+    private volatile Map<String, FunctionDefinition> functions;
+
+    /**
+     * Порог компиляции выражений в байткод, 0 - компиляция отключена
+     */
+    private volatile int jitThreshold;
+
+    /**
+     * Размер кэша разобранных выражений по умолчанию
+     */
+    private static final int DEFAULT_CACHE_CAPACITY = 128;
+
+    /**
+     * Кэш разобранных выражений
+     */
+    private final ExpressionCache cache;
+
+    /**
+     * Формулы и зависимости реактивного режима
+     */
+    private final DependencyTracker tracker = new DependencyTracker(metrics);
+
+    /**
+     * Включён ли реактивный режим
+     */
+    private volatile boolean reactive;
+
+    /**
+     * Записывает ошибку в показатели, если их сбор включён
+     * @param ex Исключение
+     * @return То же исключение
      */
-    private final Map<String, Function<Double, Double>> functions;
+    private ExpressionException failed(ExpressionException ex) {
+        if(metrics.isEnabled())
+            metrics.failed(ex);
+        return ex;
+    }
 
     /**
      * Проверяет имя переменной на правильность написания
@@ -146,211 +624,231 @@ public class ExpressionSolver {
      * @return true в случае, если переменная начинается с буквы и состоить из букв и цифр, иначе false.
      */
     private boolean isValidName(String name) {
-        boolean isValid = Character.isLetter(name.charAt(0));
-        for (int i = 1; i < name.length()&&isValid; i++) {
-            if(!(Character.isDigit(name.charAt(i)) || Character.isLetter(name.charAt(i))))
+        return isValidName(name, 0, name.length());
+    }
+
+    /**
+     * Проверяет имя переменной, заданное участком последовательности символов
+     * @param text Последовательность символов
+     * @param start Начало имени
+     * @param end Конец имени, не включительно
+     * @return true в случае, если имя начинается с буквы и состоит из букв и цифр, иначе false.
+     */
+    private boolean isValidName(CharSequence text, int start, int end) {
+        boolean isValid = start < end && Character.isLetter(text.charAt(start));
+        for (int i = start + 1; i < end&&isValid; i++) {
+            if(!(Character.isDigit(text.charAt(i)) || Character.isLetter(text.charAt(i))))
                 isValid=false;
         }
         return isValid;
     }
 
     /**
-     * Занимается непосредственным вычислением выражения без присваиваний.
-     * @param expression Математическое выражение
-     * @return Результат вычисления выражения
-     * @throws ExpressionException Выбрасывается при ошибках в вычислении результата выражения
+     * Строит дерево выражения без присваиваний.
+     * @param expression Последовательность символов, содержащая выражение
+     * @param from Начало выражения
+     * @param to Конец выражения, не включительно
+     * @param functions Словарь функций, действующий на момент компиляции
+     * @return Корень дерева выражения
+     * @throws ExpressionException Выбрасывается при ошибках в разборе выражения
      */
-    private double calculate(String expression) throws ExpressionException {
+    private Node parse(CharSequence expression, int from, int to, Map<String, FunctionDefinition> functions) throws ExpressionException {
 
-        List<String> postfixNotation = convertToReversePolishNotation(expression);
-        Stack<Double> stack = new Stack<>();
+        Tokens tokens = Tokens.scan(expression, from, to);
+        int[] postfixNotation = convertToReversePolishNotation(tokens);
+        Node[] stack = new Node[postfixNotation.length];
+        //позиция первого символа каждого операнда на стеке, для сообщений об ошибках
+        int[] positions = new int[postfixNotation.length];
+        int size = 0;
 
-        try {
-        for (String token:
+        for (int entry:
              postfixNotation) {
-            if(standartOperators.contains(token)) {
-                switch (token) {
-                    case "+" -> stack.push(stack.pop() + stack.pop());
-                    case "-" -> stack.push(-stack.pop() + stack.pop());
-                    case "*" -> stack.push(stack.pop() * stack.pop());
-                    case "_" -> //унарный минус
-                            stack.push(-stack.pop());
-                    case "/" -> {
-                        double right = stack.pop();
-                        double left = stack.pop();
-                        if (right == 0)
-                            throw new ExpressionException("деление на ноль");
-                        stack.push(left / right);
-                    }
-                    case "^" -> {
-                        double power = stack.pop();
-                        double base = stack.pop();
-                        if (base < 0)
-                            throw new ExpressionException("возведение отрицательного числа в степень");
-                        stack.push(Math.pow(base, power));
-                    }
+            int index = entry < 0 ? ~entry : entry;
+            int column = tokens.start(index) + 1;
+            if(entry < 0 || tokens.kind(index) == Tokens.OPERATOR) {
+                //унарный минус
+                if(entry < 0 || tokens.symbol(index) == '_') {
+                    if(size < 1)
+                        throw new ExpressionException(Reason.SYNTAX, "Неправильное расположение операторов", column);
+                    stack[size - 1] = new Node.Negation(stack[size - 1]);
+                    positions[size - 1] = Math.min(positions[size - 1], column);
                 }
-            }
-            else if(constants.containsKey(token)){
-                stack.push(constants.get(token));
-            }
-            else if(functions.containsKey(token)){
-                stack.push(functions.get(token).apply(stack.pop()));
-            }
-            else if(variables.containsKey(token)){
-                stack.push(variables.get(token));
-            }else{
-                try {
-                    stack.push(Double.parseDouble(token));
+                else {
+                    if(size < 2)
+                        throw new ExpressionException(Reason.SYNTAX, "Неправильное расположение операторов", column);
+                    Node right = stack[--size];
+                    stack[size - 1] = new Node.Binary(tokens.symbol(index), stack[size - 1], right);
                 }
-                catch (Exception ex)
-                {
-                    throw new ExpressionException("неизвестный токен " + token);
+                continue;
+            }
+            if(tokens.kind(index) == Tokens.NAME) {
+                String token = symbols.intern(expression, tokens.start(index), tokens.end(index));
+                Double constant = constants.get(token);
+                FunctionDefinition function = functions.get(token);
+                if(constant != null)
+                    stack[size] = new Node.Constant(token, constant);
+                else if(function != null){
+                    int arguments = index + 1 < tokens.size() && tokens.isOperator(index + 1, '(') ? tokens.arguments(index + 1) : 1;
+                    if(arguments != function.arity())
+                        throw new ExpressionException(Reason.SYNTAX, "Неверное количество аргументов функции " + token
+                                + ": ожидается " + function.arity() + ", получено " + arguments, column);
+                    if(size < arguments)
+                        throw new ExpressionException(Reason.SYNTAX, "Неправильное расположение операторов", column);
+                    size -= arguments;
+                    stack[size] = function.call(token, Arrays.copyOfRange(stack, size, size + arguments));
+                    positions[size] = Math.min(positions[size], column);
+                    size++;
+                    continue;
                 }
+                else
+                    stack[size] = new Node.Variable(token, variables.slotOf(token));
             }
+            else if(tokens.kind(index) == Tokens.NUMBER && !Double.isNaN(tokens.value(index)))
+                stack[size] = new Node.Literal(tokens.value(index));
+            else
+                throw new ExpressionException(Reason.SYNTAX, "неизвестный токен " + tokens.text(index), column);
+            positions[size++] = column;
         }
 
-        }
-        catch(EmptyStackException ex)
-        {
-            throw new ExpressionException("Неправильное расположение операторов");
-        }
-        if(stack.size() != 1)
-            throw new ExpressionException("Неправильное расположение операторов");
-        if(Double.isNaN(stack.peek()))
-            throw new ExpressionException("Некорректные значения аргументов функций");
-        return stack.pop();
+        if(size == 0)
+            throw new ExpressionException(Reason.SYNTAX, "Неправильное расположение операторов");
+        if(size != 1)
+            throw new ExpressionException(Reason.SYNTAX, "Неправильное расположение операторов", positions[1]);
+        return stack[0];
     }
 
     /**
      * Проверяет выражение на правильность расстановки скобок
-     * @param input выражение
-     * @return true, если скобки расставлены верно, иначе false.
+     * @param tokens Токены выражения
+     * @throws ExpressionException Выбрасывается с позицией первой лишней закрывающей или последней незакрытой скобки
      */
-    private boolean checkParenthesis(String input) {
+    private void checkParenthesis(Tokens tokens) throws ExpressionException {
         int count=0;
 
-        for (int i = 0; i < input.length(); i++) {
-            if(input.charAt(i)=='(')
+        for (int i = 0; i < tokens.size(); i++) {
+            if(tokens.isOperator(i, '('))
+                count++;
+            else if(tokens.isOperator(i, ')'))
+                count--;
+            if(count<0)
+                throw new ExpressionException(Reason.SYNTAX, "Несовпадение открывающих и закрывающих скобок", tokens.start(i) + 1);
+        }
+        if(count == 0)
+            return;
+        //незакрытая скобка находится обходом с конца
+        count=0;
+        for (int i = tokens.size() - 1; ; i--) {
+            if(tokens.isOperator(i, ')'))
                 count++;
-            else if(input.charAt(i)==')')
+            else if(tokens.isOperator(i, '('))
                 count--;
             if(count<0)
-                return false;
+                throw new ExpressionException(Reason.SYNTAX, "Несовпадение открывающих и закрывающих скобок", tokens.start(i) + 1);
         }
-        return count == 0;
     }
 
     /**
-     * Конвертирует выражение в список терминов, стоящих в порядке обратной польской записи.
-     * @param expression Выражение
-     * @return Список терминов, стоящий в порядке обратной польской записи.
+     * Конвертирует токены выражения в порядок обратной польской записи.
+     * @param tokens Токены выражения
+     * @return Номера токенов, стоящие в порядке обратной польской записи. Унарный минус, записанный знаком -,
+     * представлен инвертированным номером токена (~index).
      * @throws ExpressionException Выбрасывается при ошибках в вычислении списка терминов
      */
-    private List<String> convertToReversePolishNotation(String expression) throws ExpressionException {
-        if(!checkParenthesis(expression))
-            throw new ExpressionException("Несовпадение открывающих и закрывающих скобок");
-
-        List<String> output = new ArrayList<>();
-        Stack<String> stack = new Stack<>();
-        List<String> tokens = separate(expression);
-
-        for (int index = 0; index < tokens.size(); index++) {
-
-            String token=tokens.get(index);
-            if(standartOperators.contains(token)){
-                if(stack.size()>0 && !token.equals("(")){
+    int[] convertToReversePolishNotation(Tokens tokens) throws ExpressionException {
+        checkParenthesis(tokens);
+
+        int count = tokens.size();
+        int[] output = new int[count];
+        int outputSize = 0;
+        int[] stack = new int[count];
+        int stackSize = 0;
+
+        for (int index = 0; index < count; index++) {
+
+            if(tokens.kind(index) == Tokens.OPERATOR){
+                char token = tokens.symbol(index);
+                if(token == ',' || token == ')' && index > 0 && tokens.isOperator(index - 1, ','))
+                    checkArgument(tokens, index);
+                //запятая завершает аргумент: переносим операторы в стеке до открывающей скобки, оставляя её
+                if(token == ','){
+                    while(stackSize > 0 && !(stack[stackSize-1] >= 0 && tokens.isOperator(stack[stackSize-1], '(')))
+                        output[outputSize++]=stack[--stackSize];
+                    if(stackSize == 0)
+                        throw new ExpressionException(Reason.SYNTAX, "Запятая вне скобок аргументов функции", tokens.start(index) + 1);
+                }
+                else if(stackSize>0 && token != '('){
                     //если скобка, то переносим все операторы в стеке до закрывающие скобки
-                    if(token.equals(")"))
+                    if(token == ')')
                     {
-                        String s=stack.pop();
-                        while(!s.equals("("))
+                        int s=stack[--stackSize];
+                        while(!(s >= 0 && tokens.isOperator(s, '(')))
                         {
-                            output.add(s);
-                            s=stack.pop();
+                            output[outputSize++]=s;
+                            s=stack[--stackSize];
                         }
                     }
                     //по разному обрабатываем в зависимости от приоритета текущей операции
-                    else if(getPriority(token)>getPriority(stack.peek())){
-                        if(token.equals("-") && tokens.get(index - 1).equals("("))
-                            stack.push("_");
+                    else if(getPriority(tokens, index)>getPriority(tokens, stack[stackSize-1])){
+                        if(token == '-' && (tokens.isOperator(index - 1, '(') || tokens.isOperator(index - 1, ',')))
+                            stack[stackSize++]=~index;
                         else
-                            stack.push(token);
+                            stack[stackSize++]=index;
                     }
                     else{
-                        while(stack.size()>0&&(getPriority(token)<=getPriority(stack.peek()))) {
-                            output.add(stack.pop());
+                        while(stackSize>0&&(getPriority(tokens, index)<=getPriority(tokens, stack[stackSize-1]))) {
+                            output[outputSize++]=stack[--stackSize];
                         }
-                        stack.push(token);
+                        stack[stackSize++]=index;
                     }
                 }
                 else{
-                    if(token.equals("-")&&(index==0||tokens.get(index-1).equals("(")))
-                        stack.push("_");
+                    if(token == '-'&&(index==0||tokens.isOperator(index-1, '(')))
+                        stack[stackSize++]=~index;
                     else
-                        stack.push(token);
+                        stack[stackSize++]=index;
                 }
             }
             else {
                 //так отделяем функцию от переменной
-                if(index<tokens.size()-1&&tokens.get(index+1).equals("("))
-                    stack.push(token);
+                if(index<count-1&&tokens.isOperator(index+1, '('))
+                    stack[stackSize++]=index;
                 else //Добавление значения
-                    output.add(token);
+                    output[outputSize++]=index;
             }
         }
         //переносим весь остаток операторов из стека
-        while(stack.size()>0)
-            output.add(stack.pop());
-        return output;
+        while(stackSize>0)
+            output[outputSize++]=stack[--stackSize];
+        return Arrays.copyOf(output, outputSize);
     }
 
     /**
-     * Возвращает приоритет токена
-     * @param token Токен
-     * @return Приоритет токена. 0 - низкий приоритет, 4 - самый высокий.
+     * Проверяет, что перед запятой или закрывающей скобкой после запятой записан аргумент
+     * @param tokens Токены выражения
+     * @param index Номер запятой или закрывающей скобки
+     * @throws ExpressionException Выбрасывается, если аргумент пропущен
      */
-    private int getPriority(String token) {
-        return switch (token) {
-            case "(", ")" -> 0;
-            case "+", "-" -> 1;
-            case "*", "/" -> 2;
-            case "^" -> 3;
-            default -> 4;
-        };
+    private void checkArgument(Tokens tokens, int index) throws ExpressionException {
+        if(index == 0 || tokens.isOperator(index - 1, '(') || tokens.isOperator(index - 1, ','))
+            throw new ExpressionException(Reason.SYNTAX, "Пропущен аргумент функции", tokens.start(index) + 1);
     }
 
     /**
-     * Разделяет выражение на список токенов
-     * @param input Математическое выражение
-     * @return Список токенов выражения
+     * Возвращает приоритет элемента стека операторов
+     * @param tokens Токены выражения
+     * @param entry Номер токена или инвертированный номер для унарного минуса
+     * @return Приоритет токена. 0 - низкий приоритет, 4 - самый высокий.
      */
-    private List<String> separate(String input){
-        int pos = 0;
-        int n=input.length();
-
-        List<String> tokens = new ArrayList<>();
-
-        while(pos<n){
-            StringBuilder token = new StringBuilder("" + input.charAt(pos));
-
-            if(!standartOperators.contains(input)) {
-                if(Character.isDigit(input.charAt(pos))) {
-                    for (int i = pos+1; i < n && (Character.isDigit(input.charAt(i)) || input.charAt(i)=='.'); i++) {
-                        token.append(input.charAt(i));
-                    }
-                }
-                else if(Character.isLetter(input.charAt(pos))){
-                    for (int i = pos+1; i < n && (Character.isLetter(input.charAt(i)) || Character.isDigit(input.charAt(i))); i++) {
-                        token.append(input.charAt(i));
-                    }
-                }
-            }
-            if(!token.toString().contains(" "))
-                tokens.add(token.toString());
-            pos+=token.length();
-        }
-        return tokens;
+    private int getPriority(Tokens tokens, int entry) {
+        if(entry < 0 || tokens.kind(entry) != Tokens.OPERATOR)
+            return 4;
+        return switch (tokens.symbol(entry)) {
+            case '(', ')' -> 0;
+            case '+', '-' -> 1;
+            case '*', '/' -> 2;
+            case '^' -> 3;
+            default -> 4;
+        };
     }
 
-}
\ No newline at end of file
+}
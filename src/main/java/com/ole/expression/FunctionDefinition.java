@@ -0,0 +1,42 @@
+package com.ole.expression;
+
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Зарегистрированная функция решателя: количество аргументов и реализация.
+ * Задана ровно одна из реализаций, соответствующая способу регистрации.
+ * @param arity Количество аргументов
+ * @param unary Функция одного аргумента либо null
+ * @param binary Функция двух аргументов либо null
+ * @param nary Функция с аргументами в массиве либо null
+ */
+record FunctionDefinition(int arity, DoubleUnaryOperator unary, DoubleBinaryOperator binary, DoubleNaryOperator nary) {
+
+    static FunctionDefinition of(DoubleUnaryOperator function) {
+        return new FunctionDefinition(1, function, null, null);
+    }
+
+    static FunctionDefinition of(DoubleBinaryOperator function) {
+        return new FunctionDefinition(2, null, function, null);
+    }
+
+    static FunctionDefinition of(int arity, DoubleNaryOperator function) {
+        return new FunctionDefinition(arity, null, null, function);
+    }
+
+    /**
+     * Строит узел вызова функции
+     * @param name Название функции
+     * @param arguments Аргументы, их количество равно {@link #arity()}
+     * @return Узел вызова
+     */
+    Node call(String name, Node[] arguments) {
+        if (unary != null)
+            return new Node.Call(name, unary, arguments[0]);
+        if (binary != null)
+            return new Node.BinaryCall(name, binary, arguments[0], arguments[1]);
+        return new Node.NaryCall(name, nary, List.of(arguments));
+    }
+}
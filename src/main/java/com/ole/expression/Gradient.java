@@ -0,0 +1,71 @@
+package com.ole.expression;
+
+import java.util.StringJoiner;
+
+/**
+ * Значение выражения вместе с частными производными по выбранным переменным.
+ * Производные считаются аналитически по правилам дифференцирования, а не конечными разностями,
+ * поэтому точны до погрешности вычисления значения. В точках, где производная не существует,
+ * например у log(x) при x = 0, производная может быть бесконечной или NaN.
+ * @see CompiledExpression#gradient(DifferentiationMode, String...)
+ */
+public final class Gradient {
+
+    Gradient(double value, String[] variables, double[] partials) {
+        this.value = value;
+        this.variables = variables.clone();
+        this.partials = partials;
+    }
+
+    /**
+     * Возвращает значение выражения
+     * @return Значение
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Возвращает частную производную по переменной
+     * @param variable Название переменной из числа выбранных
+     * @return Частная производная; 0, если выражение не зависит от переменной
+     * @throws IllegalArgumentException Выбрасывается, если производная по переменной не вычислялась
+     */
+    public double getPartial(String variable) {
+        for (int i = 0; i < variables.length; i++)
+            if (variables[i].equals(variable))
+                return partials[i];
+        throw new IllegalArgumentException("Производная по переменной не вычислялась: " + variable);
+    }
+
+    /**
+     * Возвращает частные производные в порядке, в котором переменные были перечислены
+     * @return Новый массив производных
+     */
+    public double[] getPartials() {
+        return partials.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner result = new StringJoiner(", ", value + " [", "]");
+        for (int i = 0; i < variables.length; i++)
+            result.add("d/d" + variables[i] + " = " + partials[i]);
+        return result.toString();
+    }
+
+    /**
+     * Значение выражения
+     */
+    private final double value;
+
+    /**
+     * Выбранные переменные
+     */
+    private final String[] variables;
+
+    /**
+     * Частные производные по выбранным переменным
+     */
+    private final double[] partials;
+}
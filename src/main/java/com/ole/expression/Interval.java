@@ -0,0 +1,63 @@
+package com.ole.expression;
+
+/**
+ * Замкнутый промежуток вещественных чисел [min, max]. Концы могут быть бесконечными.
+ * @param min Нижняя граница
+ * @param max Верхняя граница
+ * @see CompiledExpression#evaluateRange(java.util.Map)
+ */
+public record Interval(double min, double max) {
+
+    /**
+     * Создаёт промежуток
+     * @throws IllegalArgumentException Выбрасывается, если граница равна NaN или нижняя граница больше верхней
+     */
+    public Interval {
+        if (Double.isNaN(min) || Double.isNaN(max) || min > max)
+            throw new IllegalArgumentException("Недопустимый промежуток: [" + min + ", " + max + "]");
+    }
+
+    /**
+     * Создаёт промежуток из одного числа
+     * @param value Число
+     * @return Промежуток [value, value]
+     */
+    public static Interval point(double value) {
+        return new Interval(value, value);
+    }
+
+    /**
+     * Находит наименьший промежуток, содержащий часть столбца значений; удобно для отбора целых блоков строк
+     * перед вычислением по строкам
+     * @param values Столбец значений
+     * @param from Первая строка
+     * @param to Строка после последней
+     * @return Промежуток от наименьшего до наибольшего значения
+     * @throws IllegalArgumentException Выбрасывается, если часть столбца пуста или содержит NaN
+     */
+    public static Interval of(double[] values, int from, int to) {
+        if (from >= to)
+            throw new IllegalArgumentException("Пустой набор значений");
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, values[i]);
+            max = Math.max(max, values[i]);
+        }
+        return new Interval(min, max);
+    }
+
+    /**
+     * Проверяет, принадлежит ли число промежутку
+     * @param value Число
+     * @return true, если min &lt;= value &lt;= max
+     */
+    public boolean contains(double value) {
+        return min <= value && value <= max;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + min + ", " + max + "]";
+    }
+}
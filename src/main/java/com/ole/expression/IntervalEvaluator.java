@@ -0,0 +1,293 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Интервальное вычисление оптимизированного дерева выражения.
+ * <p>
+ * Каждый узел вычисляется в промежуток, содержащий все значения, которые узел может получить при обычном вычислении
+ * со значениями переменных из заданных промежутков. Арифметика вычисляется на концах промежутков: округление
+ * к ближайшему монотонно, поэтому границы, посчитанные в double, ограничивают и округлённые значения обычного вычисления.
+ * Результаты функций {@link Math} могут отличаться от точных на 1 ulp в любую сторону, причём интерпретатор,
+ * сгенерированный класс и встроенные реализации JIT-компилятора JVM могут ошибаться по-разному. Поэтому границы
+ * функций расширяются наружу на 2 ulp: значение любого из путей вычисления не дальше 1 ulp от точного,
+ * а граница, посчитанная здесь, - тоже не дальше 1 ulp от точной.
+ * <p>
+ * Кроме промежутка узел помнит, может ли его значение оказаться NaN, а вычисление в целом - может ли оно выбросить ошибку:
+ * делитель содержит ноль, основание степени может быть отрицательным. Итоговое NaN тоже является ошибкой вычисления.
+ * Пустой промежуток означает, что числовых значений у узла нет: вычисление до него не доходит или даёт NaN.
+ */
+final class IntervalEvaluator {
+
+    private static final double TWO_PI = 2 * Math.PI;
+
+    /**
+     * Промежуток значений узла
+     */
+    private static final class Range {
+        Range(double lo, double hi, boolean nan) {
+            this.lo = lo;
+            this.hi = hi;
+            this.nan = nan;
+        }
+
+        final double lo;
+        final double hi;
+
+        /**
+         * Может ли значение быть NaN
+         */
+        final boolean nan;
+
+        boolean isEmpty() {
+            return lo > hi;
+        }
+
+        boolean isPoint() {
+            return lo == hi && !nan;
+        }
+
+        boolean contains(double value) {
+            return lo <= value && value <= hi;
+        }
+
+        boolean isInfinite() {
+            return Double.isInfinite(lo) || Double.isInfinite(hi);
+        }
+    }
+
+    private static Range empty(boolean nan) {
+        return new Range(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, nan);
+    }
+
+    private static final Range ANY = new Range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, true);
+
+    IntervalEvaluator(VariableStore variables, Map<String, Interval> ranges) {
+        this.variables = variables;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Оценивает значения выражения
+     * @param root Корень оптимизированного дерева
+     * @return Оценка значений
+     * @throws ExpressionException Выбрасывается, если переменной без промежутка не присвоено значение
+     */
+    IntervalResult evaluate(Node root) throws ExpressionException {
+        for (Node node : Node.postorder(root))
+            computed.put(node, range(node));
+        Range result = computed.get(root);
+        return new IntervalResult(result.isEmpty() ? null : new Interval(result.lo, result.hi), mayFail || result.nan);
+    }
+
+    /**
+     * Оценивает узел; промежутки дочерних узлов к этому моменту уже вычислены
+     */
+    private Range range(Node node) throws ExpressionException {
+        if (node instanceof Node.Literal literal)
+            return point(literal.value());
+        if (node instanceof Node.Constant constant)
+            return point(constant.value());
+        if (node instanceof Node.Variable variable) {
+            Interval interval = ranges.get(variable.name());
+            return interval != null ? new Range(interval.min(), interval.max(), false)
+                    : point(Operations.variable(variables, variable.slot()));
+        }
+        if (node instanceof Node.Negation negation) {
+            Range operand = computed.get(negation.operand());
+            return new Range(-operand.hi, -operand.lo, operand.nan);
+        }
+        if (node instanceof Node.Binary binary)
+            return binary(binary.operator(), computed.get(binary.left()), computed.get(binary.right()));
+        if (node instanceof Node.Call call && BuiltinFunctions.mathMethod(call.function()) != null)
+            return builtin(BuiltinFunctions.mathMethod(call.function()), computed.get(call.argument()));
+        return userFunction(node);
+    }
+
+    private static Range point(double value) {
+        return Double.isNaN(value) ? empty(true) : new Range(value, value, false);
+    }
+
+    private Range binary(char operator, Range a, Range b) {
+        if (operator == '/' && !b.isEmpty() && b.contains(0))
+            mayFail = true;
+        if (operator == '^' && !a.isEmpty() && a.lo < 0)
+            mayFail = true;
+        if (a.isEmpty() || b.isEmpty()) {
+            //Math.pow(NaN, 0) = 1, остальные операции с NaN дают NaN
+            if (operator == '^' && a.isEmpty() && !b.isEmpty() && b.contains(0))
+                return new Range(1, 1, true);
+            return empty(a.nan || b.nan);
+        }
+        boolean nan = a.nan || b.nan;
+        return switch (operator) {
+            case '+' -> corners(nan, a.lo + b.lo, a.lo + b.hi, a.hi + b.lo, a.hi + b.hi);
+            case '-' -> corners(nan, a.lo - b.hi, a.lo - b.lo, a.hi - b.hi, a.hi - b.lo);
+            case '*' -> corners(nan || a.contains(0) && b.isInfinite() || b.contains(0) && a.isInfinite(),
+                    a.lo * b.lo, a.lo * b.hi, a.hi * b.lo, a.hi * b.hi);
+            case '/' -> divide(nan, a, b);
+            default -> power(nan, a, b);
+        };
+    }
+
+    /**
+     * Деление; ноль исключается из делителя, так как деление на него выбрасывает ошибку
+     */
+    private static Range divide(boolean nan, Range a, Range b) {
+        Range result = empty(nan);
+        if (b.lo < 0)
+            result = union(result, quotient(nan, a, b.lo, Math.min(b.hi, -Double.MIN_VALUE)));
+        if (b.hi > 0)
+            result = union(result, quotient(nan, a, Math.max(b.lo, Double.MIN_VALUE), b.hi));
+        return result;
+    }
+
+    private static Range quotient(boolean nan, Range a, double lo, double hi) {
+        boolean infinite = Double.isInfinite(lo) || Double.isInfinite(hi);
+        return corners(nan || a.isInfinite() && infinite, a.lo / lo, a.lo / hi, a.hi / lo, a.hi / hi);
+    }
+
+    /**
+     * Степень неотрицательного основания монотонна по каждому аргументу, поэтому крайние значения достигаются в углах
+     */
+    private static Range power(boolean nan, Range a, Range b) {
+        if (a.hi < 0)
+            return empty(nan);
+        double lo = Math.max(a.lo, 0);
+        //Math.pow(1, ±inf) = NaN
+        nan |= a.contains(1) && b.isInfinite();
+        Range result = widen(corners(nan, Math.pow(lo, b.lo), Math.pow(lo, b.hi), Math.pow(a.hi, b.lo), Math.pow(a.hi, b.hi)));
+        //-0 не считается отрицательным, а Math.pow(-0, y) при нечётном отрицательном y равно -inf
+        if (a.lo <= 0 && b.lo < 0 && !result.isEmpty())
+            result = new Range(Double.NEGATIVE_INFINITY, result.hi, result.nan);
+        return result;
+    }
+
+    /**
+     * Встроенная функция; от NaN она даёт NaN
+     */
+    private static Range builtin(String name, Range x) {
+        if (x.isEmpty())
+            return x;
+        return switch (name) {
+            case "sin" -> periodic(x, Math.PI / 2, -Math.PI / 2, Math::sin);
+            case "cos" -> periodic(x, 0, Math.PI, Math::cos);
+            case "tan" -> tan(x);
+            case "log" -> logarithm(x, Math::log);
+            default -> logarithm(x, Math::log10);
+        };
+    }
+
+    /**
+     * Синус или косинус: значения на концах и ±1, если промежуток содержит точку максимума или минимума
+     */
+    private static Range periodic(Range x, double maximum, double minimum, DoubleUnaryOperator function) {
+        //Math.sin(±inf) = NaN
+        if (x.isInfinite())
+            return x.lo == x.hi ? empty(true) : new Range(-1, 1, true);
+        if (x.hi - x.lo >= TWO_PI)
+            return new Range(-1, 1, x.nan);
+        double first = function.applyAsDouble(x.lo);
+        double second = function.applyAsDouble(x.hi);
+        Range result = widen(new Range(Math.min(first, second), Math.max(first, second), x.nan));
+        double lo = containsPeriodPoint(x, minimum, TWO_PI) ? -1 : Math.max(result.lo, -1);
+        double hi = containsPeriodPoint(x, maximum, TWO_PI) ? 1 : Math.min(result.hi, 1);
+        return new Range(lo, hi, x.nan);
+    }
+
+    /**
+     * Тангенс возрастает между соседними разрывами в точках pi/2 + k*pi
+     */
+    private static Range tan(Range x) {
+        if (x.isInfinite())
+            return x.lo == x.hi ? empty(true) : ANY;
+        if (x.hi - x.lo >= Math.PI || containsPeriodPoint(x, Math.PI / 2, Math.PI))
+            return new Range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, x.nan);
+        return widen(new Range(Math.tan(x.lo), Math.tan(x.hi), x.nan));
+    }
+
+    /**
+     * Логарифм возрастает; отрицательный аргумент даёт NaN, а ноль - минус бесконечность
+     */
+    private static Range logarithm(Range x, DoubleUnaryOperator function) {
+        if (x.hi < 0)
+            return empty(true);
+        return widen(new Range(function.applyAsDouble(Math.max(x.lo, 0)), function.applyAsDouble(x.hi), x.nan || x.lo < 0));
+    }
+
+    /**
+     * Проверяет с запасом, содержит ли промежуток точку offset + k * period при каком-либо целом k.
+     * Запас учитывает погрешность деления на неточно представленное pi; лишнее срабатывание только расширяет оценку.
+     */
+    private static boolean containsPeriodPoint(Range x, double offset, double period) {
+        double slack = 1e-9 + Math.max(Math.abs(x.lo), Math.abs(x.hi)) * 1e-14;
+        double first = Math.ceil((x.lo - offset) / period - slack);
+        double last = Math.floor((x.hi - offset) / period + slack);
+        return first <= last;
+    }
+
+    /**
+     * Пользовательская функция может быть любой, поэтому её значение известно, только если все аргументы - числа
+     */
+    private Range userFunction(Node node) throws ExpressionException {
+        List<Node> children = node.children();
+        double[] arguments = new double[children.size()];
+        boolean points = true;
+        for (int i = 0; i < arguments.length; i++) {
+            Range argument = computed.get(children.get(i));
+            points &= argument.isPoint();
+            arguments[i] = argument.lo;
+        }
+        if (!points)
+            return ANY;
+        return point(Operations.call((Node.FunctionCall) node, arguments));
+    }
+
+    /**
+     * Промежуток от наименьшего до наибольшего из значений; NaN среди значений означает, что NaN возможен
+     */
+    private static Range corners(boolean nan, double... values) {
+        double lo = Double.POSITIVE_INFINITY;
+        double hi = Double.NEGATIVE_INFINITY;
+        for (double value : values) {
+            if (Double.isNaN(value))
+                nan = true;
+            else {
+                lo = Math.min(lo, value);
+                hi = Math.max(hi, value);
+            }
+        }
+        return new Range(lo, hi, nan);
+    }
+
+    private static Range union(Range a, Range b) {
+        return new Range(Math.min(a.lo, b.lo), Math.max(a.hi, b.hi), a.nan || b.nan);
+    }
+
+    /**
+     * Расширяет промежуток наружу на 2 ulp
+     */
+    private static Range widen(Range range) {
+        if (range.isEmpty())
+            return range;
+        return new Range(Math.nextDown(Math.nextDown(range.lo)), Math.nextUp(Math.nextUp(range.hi)), range.nan);
+    }
+
+    private final VariableStore variables;
+    private final Map<String, Interval> ranges;
+
+    /**
+     * Промежутки уже вычисленных узлов; повторяющиеся подвыражения - один и тот же объект
+     */
+    private final Map<Node, Range> computed = new IdentityHashMap<>();
+
+    /**
+     * Может ли вычисление выбросить ошибку
+     */
+    private boolean mayFail;
+}
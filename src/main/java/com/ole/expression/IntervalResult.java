@@ -0,0 +1,23 @@
+package com.ole.expression;
+
+/**
+ * Оценка значений выражения при всех значениях переменных из заданных промежутков.
+ * Оценка гарантированная, но может быть шире действительного множества значений,
+ * например если переменная входит в выражение несколько раз.
+ * @param bounds Промежуток, содержащий значение каждого успешного вычисления,
+ *               либо null, если ни одно вычисление не может завершиться успешно
+ * @param mayFail false гарантирует, что вычисление не выбросит ExpressionException ни при каких значениях из промежутков;
+ *                true означает, что ошибка возможна: деление на промежуток с нулём, отрицательное основание степени,
+ *                логарифм отрицательного числа или пользовательская функция, значения которой неизвестны
+ * @see CompiledExpression#evaluateRange(java.util.Map)
+ */
+public record IntervalResult(Interval bounds, boolean mayFail) {
+
+    /**
+     * Проверяет, что вычисление завершается ошибкой при любых значениях из промежутков
+     * @return true, если успешных вычислений нет
+     */
+    public boolean alwaysFails() {
+        return bounds == null;
+    }
+}
@@ -0,0 +1,492 @@
+package com.ole.expression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Генерирует по дереву выражения класс JVM, реализующий {@link Evaluator}.
+ * Класс определяется как скрытый ({@link MethodHandles.Lookup#defineHiddenClass}) в пакете решателя,
+ * поэтому может обращаться к его закрытым классам и выгружается вместе с выражением.
+ * Встроенные функции вызываются напрямую через методы {@link Math}, арифметика записывается инструкциями JVM,
+ * а проверки ошибок вызываются из {@link Operations}, так что JIT-компилятор HotSpot может встроить всё выражение целиком.
+ * Повторяющиеся подвыражения вычисляются один раз и хранятся в локальных переменных метода.
+ * Код не содержит переходов, поэтому таблица StackMapTable не нужна.
+ */
+final class JitCompiler {
+
+    private JitCompiler(Set<Node> shared) {
+        this.shared = shared;
+    }
+
+    /**
+     * Генерирует и загружает класс для вычисления выражения
+     * @param root Корень дерева выражения
+     * @return Экземпляр сгенерированного класса
+     * @throws ReflectiveOperationException Выбрасывается, если класс не удалось определить или создать
+     */
+    static Evaluator compile(Node root) throws ReflectiveOperationException {
+        JitCompiler compiler = new JitCompiler(Optimizer.sharedNodes(root));
+        byte[] bytes = compiler.generate(root);
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+        try {
+            return (Evaluator) lookup.findConstructor(lookup.lookupClass(),
+                            MethodType.methodType(void.class, DoubleUnaryOperator[].class, DoubleBinaryOperator[].class, DoubleNaryOperator[].class))
+                    .invoke(compiler.functions.toArray(new DoubleUnaryOperator[0]),
+                            compiler.binaryFunctions.toArray(new DoubleBinaryOperator[0]),
+                            compiler.naryFunctions.toArray(new DoubleNaryOperator[0]));
+        } catch (ReflectiveOperationException | RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new ReflectiveOperationException(ex);
+        }
+    }
+
+    private static final String CLASS_NAME = "com/ole/expression/GeneratedExpression";
+    private static final String VARIABLE_STORE = "com/ole/expression/VariableStore";
+    private static final String OPERATIONS = "com/ole/expression/Operations";
+    private static final String OPERATOR = "java/util/function/DoubleUnaryOperator";
+    private static final String BINARY_OPERATOR = "java/util/function/DoubleBinaryOperator";
+    private static final String NARY_OPERATOR = "com/ole/expression/DoubleNaryOperator";
+
+    /**
+     * Поля сгенерированного класса с пользовательскими функциями, в порядке параметров конструктора
+     */
+    private static final String[] FIELD_NAMES = {"functions", "binaryFunctions", "naryFunctions"};
+    private static final String[] FIELD_DESCRIPTORS = {"[L" + OPERATOR + ";", "[L" + BINARY_OPERATOR + ";", "[L" + NARY_OPERATOR + ";"};
+
+    /**
+     * Наибольший допустимый размер кода метода; глубина стека и число локальных переменных ограничены тем же числом
+     */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /**
+     * Пул констант класса
+     */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolSize = 1;
+
+    /**
+     * Код метода evaluate
+     */
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private int stack;
+    private int maxStack;
+
+    /**
+     * Повторяющиеся узлы и номера локальных переменных, в которых хранятся их значения
+     */
+    private final Set<Node> shared;
+    private final Map<Node, Integer> locals = new IdentityHashMap<>();
+    private int maxLocals = 2;
+
+    /**
+     * Пользовательские функции, передаваемые в конструктор сгенерированного класса
+     */
+    private final List<DoubleUnaryOperator> functions = new ArrayList<>();
+    private final List<DoubleBinaryOperator> binaryFunctions = new ArrayList<>();
+    private final List<DoubleNaryOperator> naryFunctions = new ArrayList<>();
+
+    /**
+     * Собирает файл класса
+     * @param root Корень дерева выражения
+     * @return Содержимое файла класса
+     */
+    private byte[] generate(Node root) {
+        int thisClass = classEntry(CLASS_NAME);
+        int superClass = classEntry("java/lang/Object");
+        int evaluatorInterface = classEntry("com/ole/expression/Evaluator");
+
+        emit(root);
+        instruction(0xaf, -2); //dreturn
+        if (code.size() > MAX_CODE_LENGTH || maxStack > MAX_CODE_LENGTH || maxLocals > MAX_CODE_LENGTH)
+            throw new IllegalStateException("Выражение слишком велико для генерации класса");
+        byte[] evaluateCode = code.toByteArray();
+
+        byte[] constructorCode = new byte[5 + 5 * FIELD_NAMES.length];
+        constructorCode[0] = 0x2a; //aload_0
+        constructorCode[1] = (byte) 0xb7; //invokespecial Object.<init>
+        putShort(constructorCode, 2, methodEntry("java/lang/Object", "<init>", "()V"));
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            int offset = 4 + 5 * i;
+            constructorCode[offset] = 0x2a; //aload_0
+            constructorCode[offset + 1] = (byte) (0x2b + i); //aload_<i+1>
+            constructorCode[offset + 2] = (byte) 0xb5; //putfield
+            putShort(constructorCode, offset + 3, fieldEntry(CLASS_NAME, FIELD_NAMES[i], FIELD_DESCRIPTORS[i]));
+        }
+        constructorCode[constructorCode.length - 1] = (byte) 0xb1; //return
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            int codeName = utf8("Code");
+            int constructorName = utf8("<init>");
+            int constructorDescriptor = utf8("(" + String.join("", FIELD_DESCRIPTORS) + ")V");
+            int evaluateName = utf8("evaluate");
+            int evaluateDescriptor = utf8("(L" + VARIABLE_STORE + ";)D");
+            int[] fieldNames = new int[FIELD_NAMES.length];
+            int[] fieldDescriptors = new int[FIELD_NAMES.length];
+            for (int i = 0; i < FIELD_NAMES.length; i++) {
+                fieldNames[i] = utf8(FIELD_NAMES[i]);
+                fieldDescriptors[i] = utf8(FIELD_DESCRIPTORS[i]);
+            }
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(61);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(0x0010 | 0x0020); //final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(evaluatorInterface);
+
+            out.writeShort(FIELD_NAMES.length);
+            for (int i = 0; i < FIELD_NAMES.length; i++) {
+                out.writeShort(0x0002 | 0x0010); //private final
+                out.writeShort(fieldNames[i]);
+                out.writeShort(fieldDescriptors[i]);
+                out.writeShort(0);
+            }
+
+            out.writeShort(2);
+            writeMethod(out, constructorName, constructorDescriptor, codeName, 2, 1 + FIELD_NAMES.length, constructorCode);
+            writeMethod(out, evaluateName, evaluateDescriptor, codeName, maxStack, maxLocals, evaluateCode);
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName,
+                                    int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(0x0001); //public
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Генерирует код вычисления дерева, оставляющий значение корня на вершине стека.
+     * Дерево обходится с явным стеком, поэтому глубина выражения не ограничена стеком потока.
+     * @param root Корень дерева
+     */
+    private void emit(Node root) {
+        Node[] path = new Node[16];
+        int[] next = new int[16];
+        int depth = 0;
+        path[0] = root;
+        enter(root);
+        while (depth >= 0) {
+            Node node = path[depth];
+            List<Node> children = node.children();
+            int index = next[depth];
+            if (index < children.size()) {
+                next[depth]++;
+                beforeArgument(node, index);
+                Node child = children.get(index);
+                Integer local = locals.get(child);
+                if (local != null) {
+                    localInstruction(0x18, local, 2); //dload
+                    afterArgument(node);
+                    continue;
+                }
+                if (++depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                }
+                path[depth] = child;
+                next[depth] = 0;
+                enter(child);
+                continue;
+            }
+            exit(node);
+            if (shared.contains(node)) {
+                int local = maxLocals;
+                maxLocals += 2;
+                locals.put(node, local);
+                instruction(0x5c, 2); //dup2
+                localInstruction(0x39, local, -2); //dstore
+            }
+            if (--depth >= 0)
+                afterArgument(path[depth]);
+        }
+    }
+
+    /**
+     * Записывает инструкцию с номером локальной переменной, при необходимости с префиксом wide
+     */
+    private void localInstruction(int opcode, int local, int stackEffect) {
+        if (local > 255) {
+            code.write(0xc4); //wide
+            instruction(opcode, stackEffect);
+            writeShort(local);
+        }
+        else {
+            instruction(opcode, stackEffect);
+            code.write(local);
+        }
+    }
+
+    /**
+     * Генерирует код, предшествующий аргументам узла: загрузку пользовательской функции и массива аргументов
+     */
+    private void enter(Node node) {
+        if (node instanceof Node.Call call && BuiltinFunctions.mathMethod(call.function()) == null)
+            loadFunction(0, indexOf(functions, call.function()));
+        else if (node instanceof Node.BinaryCall call)
+            loadFunction(1, indexOf(binaryFunctions, call.function()));
+        else if (node instanceof Node.NaryCall call) {
+            loadFunction(2, indexOf(naryFunctions, call.function()));
+            pushInt(call.arguments().size());
+            instruction(0xbc, 0); //newarray double
+            code.write(7);
+        }
+    }
+
+    private void beforeArgument(Node node, int index) {
+        if (node instanceof Node.NaryCall) {
+            instruction(0x59, 1); //dup
+            pushInt(index);
+        }
+    }
+
+    private void afterArgument(Node node) {
+        if (node instanceof Node.NaryCall)
+            instruction(0x52, -4); //dastore
+    }
+
+    /**
+     * Генерирует код операции узла; значения аргументов к этому моменту уже на стеке
+     */
+    private void exit(Node node) {
+        if (node instanceof Node.Literal literal)
+            pushDouble(literal.value());
+        else if (node instanceof Node.Constant constant)
+            pushDouble(constant.value());
+        else if (node instanceof Node.Variable variable) {
+            instruction(0x2b, 1); //aload_1
+            pushInt(variable.slot());
+            invokeStatic(OPERATIONS, "variable", "(L" + VARIABLE_STORE + ";I)D", 2, 2);
+        }
+        else if (node instanceof Node.Negation)
+            instruction(0x77, 0); //dneg
+        else if (node instanceof Node.Binary binary) {
+            switch (binary.operator()) {
+                case '+' -> instruction(0x63, -2); //dadd
+                case '-' -> instruction(0x67, -2); //dsub
+                case '*' -> instruction(0x6b, -2); //dmul
+                case '/' -> invokeStatic(OPERATIONS, "divide", "(DD)D", 4, 2);
+                default -> invokeStatic(OPERATIONS, "power", "(DD)D", 4, 2);
+            }
+        }
+        else if (node instanceof Node.Call call) {
+            String method = BuiltinFunctions.mathMethod(call.function());
+            if (method != null)
+                invokeStatic("java/lang/Math", method, "(D)D", 2, 2);
+            else
+                invokeInterface(OPERATOR, "(D)D", 3);
+        }
+        else if (node instanceof Node.BinaryCall)
+            invokeInterface(BINARY_OPERATOR, "(DD)D", 5);
+        else if (node instanceof Node.NaryCall)
+            invokeInterface(NARY_OPERATOR, "([D)D", 2);
+    }
+
+    private static <T> int indexOf(List<T> functions, T function) {
+        int index = functions.indexOf(function);
+        if (index < 0) {
+            index = functions.size();
+            functions.add(function);
+        }
+        return index;
+    }
+
+    /**
+     * Кладёт на стек пользовательскую функцию из массива в поле сгенерированного класса
+     * @param field Номер поля в {@link #FIELD_NAMES}
+     * @param index Номер функции в массиве
+     */
+    private void loadFunction(int field, int index) {
+        instruction(0x2a, 1); //aload_0
+        instruction(0xb4, 0); //getfield
+        writeShort(fieldEntry(CLASS_NAME, FIELD_NAMES[field], FIELD_DESCRIPTORS[field]));
+        pushInt(index);
+        instruction(0x32, -1); //aaload
+    }
+
+    /**
+     * Вызывает applyAsDouble функционального интерфейса, объект которого лежит на стеке под аргументами
+     * @param count Размер объекта и аргументов в словах
+     */
+    private void invokeInterface(String owner, String descriptor, int count) {
+        instruction(0xb9, 2 - count); //invokeinterface applyAsDouble
+        writeShort(interfaceMethodEntry(owner, "applyAsDouble", descriptor));
+        code.write(count);
+        code.write(0);
+    }
+
+    private void pushDouble(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L)
+            instruction(0x0e, 2); //dconst_0
+        else if (value == 1.0)
+            instruction(0x0f, 2); //dconst_1
+        else {
+            instruction(0x14, 2); //ldc2_w
+            writeShort(doubleEntry(value));
+        }
+    }
+
+    private void pushInt(int value) {
+        if (value <= 5)
+            instruction(0x03 + value, 1); //iconst_<n>
+        else if (value <= Byte.MAX_VALUE) {
+            instruction(0x10, 1); //bipush
+            code.write(value);
+        }
+        else if (value <= Short.MAX_VALUE) {
+            instruction(0x11, 1); //sipush
+            writeShort(value);
+        }
+        else {
+            instruction(0x13, 1); //ldc_w
+            writeShort(intEntry(value));
+        }
+    }
+
+    private void invokeStatic(String owner, String name, String descriptor, int argumentSize, int resultSize) {
+        instruction(0xb8, resultSize - argumentSize);
+        writeShort(methodEntry(owner, name, descriptor));
+    }
+
+    /**
+     * Записывает код инструкции и учитывает её влияние на глубину стека
+     * @param opcode Код инструкции
+     * @param stackEffect Изменение глубины стека в словах
+     */
+    private void instruction(int opcode, int stackEffect) {
+        code.write(opcode);
+        stack += stackEffect;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void writeShort(int value) {
+        code.write(value >>> 8);
+        code.write(value);
+    }
+
+    private static void putShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 8);
+        bytes[offset + 1] = (byte) value;
+    }
+
+    private int utf8(String value) {
+        return entry("U" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    private int intEntry(int value) {
+        return entry("I" + value, 1, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    private int doubleEntry(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return entry("D" + bits, 2, out -> {
+            out.writeByte(6);
+            out.writeLong(bits);
+        });
+    }
+
+    private int classEntry(String name) {
+        int nameIndex = utf8(name);
+        return entry("C" + name, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return entry("N" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    private int fieldEntry(String owner, String name, String descriptor) {
+        return memberEntry(9, owner, name, descriptor);
+    }
+
+    private int methodEntry(String owner, String name, String descriptor) {
+        return memberEntry(10, owner, name, descriptor);
+    }
+
+    private int interfaceMethodEntry(String owner, String name, String descriptor) {
+        return memberEntry(11, owner, name, descriptor);
+    }
+
+    private int memberEntry(int tag, String owner, String name, String descriptor) {
+        int classIndex = classEntry(owner);
+        int nameAndTypeIndex = nameAndType(name, descriptor);
+        return entry("M" + tag + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    /**
+     * Добавляет запись в пул констант, если такой записи ещё нет
+     * @param key Ключ записи
+     * @param size Количество занимаемых записью индексов
+     * @param writer Запись содержимого
+     * @return Индекс записи в пуле констант
+     */
+    private int entry(String key, int size, PoolWriter writer) {
+        Integer index = poolIndexes.get(key);
+        if (index != null)
+            return index;
+        try {
+            writer.write(new DataOutputStream(pool));
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        index = poolSize;
+        poolSize += size;
+        poolIndexes.put(key, index);
+        return index;
+    }
+
+    private interface PoolWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,57 @@
+package com.ole.expression;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма длительностей с корзинами по степеням двойки.
+ * Корзина i содержит длительности, двоичная запись которых занимает i бит, то есть от 2^(i-1) до 2^i - 1 наносекунд.
+ * Запись - это два увеличения счётчиков {@link LongAdder}, поэтому потоки почти не мешают друг другу.
+ */
+final class LatencyHistogram {
+
+    /**
+     * Записывает длительность
+     * @param nanos Длительность в наносекундах
+     */
+    void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+        total.add(nanos);
+    }
+
+    /**
+     * Возвращает снимок гистограммы. Снимок, сделанный во время записи, может не включать последние записи.
+     * @return Снимок
+     */
+    LatencySnapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new LatencySnapshot(count, total.sum(), counts);
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets)
+            bucket.reset();
+        total.reset();
+    }
+
+    /**
+     * Корзины: для длительности 0 и для каждой длины двоичной записи от 1 до 63 бит
+     */
+    private final LongAdder[] buckets = new LongAdder[64];
+
+    {
+        for (int i = 0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Сумма всех длительностей
+     */
+    private final LongAdder total = new LongAdder();
+}
@@ -0,0 +1,64 @@
+package com.ole.expression;
+
+import java.util.Arrays;
+
+/**
+ * Снимок гистограммы длительностей
+ * @param count Количество измерений
+ * @param totalNanos Суммарная длительность в наносекундах
+ * @param buckets Количество измерений по корзинам: корзина i содержит длительности от 2^(i-1) до 2^i - 1 наносекунд,
+ *                корзина 0 - нулевые длительности
+ */
+public record LatencySnapshot(long count, long totalNanos, long[] buckets) {
+
+    public LatencySnapshot {
+        buckets = buckets.clone();
+    }
+
+    @Override
+    public long[] buckets() {
+        return buckets.clone();
+    }
+
+    /**
+     * Возвращает среднюю длительность
+     * @return Средняя длительность в наносекундах; 0, если измерений не было
+     */
+    public double meanNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * Оценивает процентиль длительности сверху: возвращает верхнюю границу корзины, в которую попадает процентиль
+     * @param quantile Доля измерений от 0 до 1, например 0.99
+     * @return Длительность в наносекундах, не меньшая искомого процентиля; 0, если измерений не было
+     */
+    public long percentileNanos(double quantile) {
+        if (quantile < 0 || quantile > 1)
+            throw new IllegalArgumentException("Доля должна быть от 0 до 1: " + quantile);
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen > 0)
+                return i == 0 ? 0 : i == 63 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof LatencySnapshot snapshot && count == snapshot.count
+                && totalNanos == snapshot.totalNanos && Arrays.equals(buckets, snapshot.buckets);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(count) + Arrays.hashCode(buckets);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot[count=" + count + ", meanNanos=" + meanNanos() + ", p99Nanos=" + percentileNanos(0.99) + "]";
+    }
+}
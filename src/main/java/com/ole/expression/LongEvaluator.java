@@ -0,0 +1,139 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+/**
+ * Целочисленное вычисление дерева выражения в long.
+ * <p>
+ * Результат либо равен точному математическому значению выражения, либо вычисление выбрасывает ошибку:
+ * переполнение long, деление с остатком, отрицательный показатель степени и дробные значения переменных
+ * и констант не округляются, а приводят к {@link Reason#OVERFLOW} или {@link Reason#INEXACT}.
+ * Литералы по модулю больше 2^53 тоже запрещены: при разборе они уже округлены до double.
+ * Функции вычисляются в double, их аргументы и значения должны быть точно представимыми целыми числами.
+ * <p>
+ * Дерево должно быть без свёртки констант, которую оптимизатор выполняет в double.
+ */
+final class LongEvaluator {
+
+    private LongEvaluator() {
+    }
+
+    /**
+     * Все целые числа по модулю не больше 2^53 представимы в double точно
+     */
+    private static final long MAX_EXACT = 1L << 53;
+
+    private static final String OVERFLOW = "переполнение целого числа";
+
+    /**
+     * Вычисляет выражение
+     * @param order Узлы дерева без свёртки констант
+     * @param variables Хранилище переменных
+     * @return Значение выражения
+     * @throws ExpressionException Выбрасывается при ошибках вычисления, переполнении и нецелых значениях
+     */
+    static long evaluate(Postorder order, VariableStore variables) throws ExpressionException {
+        Node[] nodes = order.nodes();
+        int[][] children = order.children();
+        long[] values = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+            values[i] = value(nodes[i], children[i], values, variables);
+        return values[nodes.length - 1];
+    }
+
+    /**
+     * Вычисляет узел; значения дочерних узлов к этому моменту уже вычислены
+     */
+    private static long value(Node node, int[] args, long[] values, VariableStore variables) throws ExpressionException {
+        if (node instanceof Node.Literal literal) {
+            if (Math.abs(literal.value()) > MAX_EXACT)
+                throw new ExpressionException(Reason.OVERFLOW, "Целое число больше 2^53 нельзя записать литералом: " + literal.value());
+            return toLong(literal.value());
+        }
+        if (node instanceof Node.Constant constant)
+            return toLong(constant.value());
+        if (node instanceof Node.Variable variable)
+            return toLong(Operations.variable(variables, variable.slot()));
+        if (node instanceof Node.Negation) {
+            long operand = values[args[0]];
+            if (operand == Long.MIN_VALUE)
+                throw new ExpressionException(Reason.OVERFLOW, OVERFLOW);
+            return -operand;
+        }
+        if (node instanceof Node.Binary binary)
+            return binary(binary.operator(), values[args[0]], values[args[1]]);
+        double[] arguments = new double[args.length];
+        for (int i = 0; i < arguments.length; i++)
+            arguments[i] = toDouble(values[args[i]]);
+        return toLong(Operations.call((Node.FunctionCall) node, arguments));
+    }
+
+    private static long binary(char operator, long left, long right) throws ExpressionException {
+        try {
+            return switch (operator) {
+                case '+' -> Math.addExact(left, right);
+                case '-' -> Math.subtractExact(left, right);
+                case '*' -> Math.multiplyExact(left, right);
+                case '/' -> divide(left, right);
+                default -> power(left, right);
+            };
+        } catch (ArithmeticException ex) {
+            throw new ExpressionException(Reason.OVERFLOW, OVERFLOW);
+        }
+    }
+
+    private static long divide(long left, long right) throws ExpressionException {
+        if (right == 0)
+            throw new ExpressionException(Reason.DIVISION_BY_ZERO, Operations.DIVISION_BY_ZERO);
+        if (left % right != 0)
+            throw new ExpressionException(Reason.INEXACT, "Частное не является целым числом: " + left + " / " + right);
+        //Long.MIN_VALUE / -1 переполняется
+        if (right == -1)
+            return Math.negateExact(left);
+        return left / right;
+    }
+
+    private static long power(long base, long power) throws ExpressionException {
+        if (base < 0)
+            throw new ExpressionException(Reason.NEGATIVE_BASE, Operations.NEGATIVE_BASE);
+        if (power < 0) {
+            if (base == 0)
+                throw new ExpressionException(Reason.DIVISION_BY_ZERO, Operations.DIVISION_BY_ZERO);
+            if (base != 1)
+                throw new ExpressionException(Reason.INEXACT, "Степень не является целым числом: " + base + " ^ " + power);
+            return 1;
+        }
+        if (base <= 1)
+            return power == 0 ? 1 : base;
+        long result = 1;
+        //основание не меньше 2, поэтому до переполнения не больше 63 умножений
+        for (long i = 0; i < power; i++)
+            result = Math.multiplyExact(result, base);
+        return result;
+    }
+
+    /**
+     * Переводит значение в long без округления
+     * @throws ExpressionException Выбрасывается, если значение дробное, бесконечное или не является числом
+     */
+    private static long toLong(double value) throws ExpressionException {
+        if (Double.isNaN(value))
+            throw new ExpressionException(Reason.NOT_A_NUMBER, Operations.NOT_A_NUMBER);
+        if (value < -0x1p63 || value >= 0x1p63)
+            throw new ExpressionException(Reason.OVERFLOW, OVERFLOW);
+        if (value != Math.rint(value))
+            throw new ExpressionException(Reason.INEXACT, "Значение не является целым числом: " + value);
+        return (long) value;
+    }
+
+    /**
+     * Переводит аргумент функции в double без округления
+     * @throws ExpressionException Выбрасывается, если аргумент не представим точно в double
+     */
+    private static double toDouble(long value) throws ExpressionException {
+        if (Math.abs(value) > MAX_EXACT)
+            throw new ExpressionException(Reason.INEXACT, "Аргумент функции больше 2^53 не представим точно: " + value);
+        return value;
+    }
+}
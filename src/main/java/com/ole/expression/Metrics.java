@@ -0,0 +1,128 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Показатели работы решателя.
+ * Пока сбор выключен, места измерения проверяют только volatile-флаг {@link #isEnabled()} и больше ничего не делают.
+ * Все счётчики - {@link LongAdder}, поэтому одновременные измерения из многих потоков не борются за одну ячейку памяти.
+ */
+final class Metrics {
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Записывает успешный разбор выражения
+     * @param nanos Длительность разбора
+     */
+    void parsed(long nanos) {
+        parse.record(nanos);
+    }
+
+    /**
+     * Записывает успешное вычисление выражения
+     * @param nanos Длительность вычисления
+     */
+    void evaluated(long nanos) {
+        evaluate.record(nanos);
+    }
+
+    /**
+     * Записывает пакетное вычисление
+     * @param rows Количество строк
+     */
+    void batch(int rows) {
+        batchRows.add(rows);
+    }
+
+    /**
+     * Записывает ошибку
+     * @param ex Исключение
+     */
+    void failed(ExpressionException ex) {
+        failed(ex.getReason());
+    }
+
+    void failed(Reason reason) {
+        errors[reason.ordinal()].increment();
+    }
+
+    /**
+     * Возвращает счётчик вызовов функции, создавая его при первом обращении
+     * @param name Название функции
+     * @return Счётчик
+     */
+    LongAdder functionCounter(String name) {
+        return functionCalls.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Обнуляет показатели
+     */
+    void reset() {
+        parse.reset();
+        evaluate.reset();
+        batchRows.reset();
+        functionCalls.values().forEach(LongAdder::reset);
+        for (LongAdder counter : errors)
+            counter.reset();
+    }
+
+    /**
+     * Собирает снимок показателей
+     * @param cache Счётчики кэша решателя
+     * @return Снимок
+     */
+    MetricsSnapshot snapshot(CacheStats cache) {
+        Map<String, Long> calls = new HashMap<>();
+        functionCalls.forEach((name, counter) -> {
+            long sum = counter.sum();
+            if (sum > 0)
+                calls.put(name, sum);
+        });
+        Map<Reason, Long> failures = new EnumMap<>(Reason.class);
+        for (Reason reason : Reason.values()) {
+            long sum = errors[reason.ordinal()].sum();
+            if (sum > 0)
+                failures.put(reason, sum);
+        }
+        return new MetricsSnapshot(enabled, parse.snapshot(), evaluate.snapshot(), batchRows.sum(), cache, calls, failures);
+    }
+
+    /**
+     * Включён ли сбор показателей
+     */
+    private volatile boolean enabled;
+
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final LatencyHistogram evaluate = new LatencyHistogram();
+    private final LongAdder batchRows = new LongAdder();
+
+    /**
+     * Счётчики вызовов по названиям функций
+     */
+    private final Map<String, LongAdder> functionCalls = new ConcurrentHashMap<>();
+
+    /**
+     * Счётчики ошибок по порядковым номерам причин
+     */
+    private final LongAdder[] errors = new LongAdder[Reason.values().length];
+
+    {
+        for (int i = 0; i < errors.length; i++)
+            errors[i] = new LongAdder();
+    }
+}
@@ -0,0 +1,32 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+import java.util.Map;
+
+/**
+ * Снимок показателей работы решателя
+ * @param enabled Включён ли сбор показателей
+ * @param parse Длительности разбора выражений
+ * @param evaluate Длительности вычисления выражений, кроме пакетных
+ * @param batchRows Количество строк, вычисленных в пакетном режиме
+ * @param cache Счётчики кэша разобранных выражений; ведутся всегда
+ * @param functionCalls Количество вызовов функций по названиям
+ * @param errors Количество ошибок по причинам; причины без ошибок не включаются
+ */
+public record MetricsSnapshot(boolean enabled, LatencySnapshot parse, LatencySnapshot evaluate, long batchRows,
+                              CacheStats cache, Map<String, Long> functionCalls, Map<Reason, Long> errors) {
+
+    public MetricsSnapshot {
+        functionCalls = Map.copyOf(functionCalls);
+        errors = Map.copyOf(errors);
+    }
+
+    /**
+     * Возвращает общее количество ошибок
+     * @return Количество ошибок
+     */
+    public long errorCount() {
+        return errors.values().stream().mapToLong(Long::longValue).sum();
+    }
+}
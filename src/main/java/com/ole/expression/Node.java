@@ -0,0 +1,217 @@
+package com.ole.expression;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Узел дерева разобранного выражения.
+ * Дерево строится один раз при компиляции выражения и далее не изменяется.
+ * Функции и константы в дереве уже определены, переменные связаны с ячейками хранилища переменных.
+ */
+sealed interface Node permits Node.Literal, Node.Constant, Node.Variable, Node.Negation, Node.Binary, Node.FunctionCall {
+
+    /**
+     * Возвращает непосредственные дочерние узлы
+     * @return Операнды или аргументы узла; пустой список для листьев
+     */
+    List<Node> children();
+
+    /**
+     * Возвращает названия переменных, которые читает выражение
+     * @param root Корень дерева
+     * @return Названия переменных в порядке первого обращения
+     */
+    static Set<String> variableNames(Node root) {
+        Set<String> names = new LinkedHashSet<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (node instanceof Variable variable)
+                names.add(variable.name());
+            List<Node> children = node.children();
+            for (int i = children.size() - 1; i >= 0; i--)
+                pending.push(children.get(i));
+        }
+        return names;
+    }
+
+    /**
+     * Возвращает названия функций, которые вызывает выражение
+     * @param root Корень дерева
+     * @return Названия функций в порядке первого вызова
+     */
+    static Set<String> functionNames(Node root) {
+        Set<String> names = new LinkedHashSet<>();
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (node instanceof FunctionCall call)
+                names.add(call.name());
+            List<Node> children = node.children();
+            for (int i = children.size() - 1; i >= 0; i--)
+                pending.push(children.get(i));
+        }
+        return names;
+    }
+
+    /**
+     * Перечисляет узлы дерева в обратном порядке: каждый узел после всех своих дочерних.
+     * Обход выполняется без рекурсии, поэтому глубина дерева ограничена только памятью.
+     * @param root Корень дерева
+     * @return Узлы дерева; узел, на который ссылаются несколько раз, входит в список один раз
+     */
+    static List<Node> postorder(Node root) {
+        List<Node> order = new ArrayList<>();
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Node[] path = new Node[16];
+        int[] next = new int[16];
+        int depth = 0;
+        path[0] = root;
+        visited.add(root);
+        while (depth >= 0) {
+            Node node = path[depth];
+            List<Node> children = node.children();
+            if (next[depth] == children.size()) {
+                order.add(node);
+                depth--;
+                continue;
+            }
+            Node child = children.get(next[depth]++);
+            if (!visited.add(child))
+                continue;
+            if (++depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+                next = Arrays.copyOf(next, depth * 2);
+            }
+            path[depth] = child;
+            next[depth] = 0;
+        }
+        return order;
+    }
+
+    /**
+     * Числовой литерал
+     * @param value Значение литерала
+     */
+    record Literal(double value) implements Node {
+        @Override
+        public List<Node> children() {
+            return List.of();
+        }
+    }
+
+    /**
+     * Константа, значение которой подставляется при компиляции
+     * @param name Название константы
+     * @param value Значение константы
+     */
+    record Constant(String name, double value) implements Node {
+        @Override
+        public List<Node> children() {
+            return List.of();
+        }
+    }
+
+    /**
+     * Переменная, значение которой берётся в момент вычисления
+     * @param name Название переменной
+     * @param slot Номер ячейки в хранилище переменных
+     */
+    record Variable(String name, int slot) implements Node {
+        @Override
+        public List<Node> children() {
+            return List.of();
+        }
+    }
+
+    /**
+     * Унарный минус
+     * @param operand Операнд
+     */
+    record Negation(Node operand) implements Node {
+        @Override
+        public List<Node> children() {
+            return List.of(operand);
+        }
+    }
+
+    /**
+     * Бинарный оператор
+     * @param operator Символ оператора: + - * / ^
+     * @param left Левый операнд
+     * @param right Правый операнд
+     */
+    record Binary(char operator, Node left, Node right) implements Node {
+        @Override
+        public List<Node> children() {
+            return List.of(left, right);
+        }
+    }
+
+    /**
+     * Вызов функции. Функция определяется при компиляции, поэтому при вычислении она не ищется по имени.
+     */
+    sealed interface FunctionCall extends Node permits Call, BinaryCall, NaryCall {
+
+        /**
+         * Возвращает название функции
+         * @return Название функции
+         */
+        String name();
+    }
+
+    /**
+     * Вызов функции одного аргумента
+     * @param name Название функции
+     * @param function Функция
+     * @param argument Аргумент функции
+     */
+    record Call(String name, DoubleUnaryOperator function, Node argument) implements FunctionCall {
+        @Override
+        public List<Node> children() {
+            return List.of(argument);
+        }
+    }
+
+    /**
+     * Вызов функции двух аргументов
+     * @param name Название функции
+     * @param function Функция
+     * @param left Первый аргумент
+     * @param right Второй аргумент
+     */
+    record BinaryCall(String name, DoubleBinaryOperator function, Node left, Node right) implements FunctionCall {
+        @Override
+        public List<Node> children() {
+            return List.of(left, right);
+        }
+    }
+
+    /**
+     * Вызов функции с аргументами, передаваемыми массивом
+     * @param name Название функции
+     * @param function Функция
+     * @param arguments Аргументы функции
+     */
+    record NaryCall(String name, DoubleNaryOperator function, List<Node> arguments) implements FunctionCall {
+        public NaryCall {
+            arguments = List.copyOf(arguments);
+        }
+
+        @Override
+        public List<Node> children() {
+            return arguments;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.ole.expression;
+
+/**
+ * Решатель выражений для очень большого количества переменных.
+ * <p>
+ * Переменные хранятся в {@link OffHeapVariableTable}: значения лежат вне кучи, а номера ячеек ищутся
+ * в таблице открытой адресации из примитивного массива, поэтому сотни тысяч переменных не создают
+ * в куче ни записей словаря, ни упакованных чисел. Результаты вычислений совпадают с {@link ExpressionSolver}.
+ * Как и {@link ExpressionSolver}, решатель не предназначен для использования из нескольких потоков.
+ * Большой набор переменных удобно просматривать по страницам методом {@link #getVariables(int, int)}.
+ */
+public class OffHeapExpressionSolver extends ExpressionSolver {
+
+    /**
+     * Устанавливает стартовые списки функций и операторов
+     */
+    public OffHeapExpressionSolver() {
+        this(0);
+    }
+
+    /**
+     * Устанавливает стартовые списки функций и операторов и заранее выделяет место под переменные
+     * @param expectedVariables Ожидаемое количество переменных
+     * @throws IllegalArgumentException Выбрасывается, если количество отрицательно или слишком велико
+     */
+    public OffHeapExpressionSolver(int expectedVariables) {
+        super(new OffHeapVariableTable(expectedVariables));
+    }
+}
@@ -0,0 +1,166 @@
+package com.ole.expression;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Однопоточная таблица переменных для очень большого количества переменных.
+ * Значения хранятся вне кучи в прямом {@link ByteBuffer} по 8 байт на ячейку, а номера ячеек ищутся
+ * в таблице открытой адресации из примитивного массива. На переменную в куче приходится только ссылка
+ * на её имя и элемент массива номеров, без объектов записей словаря и упакованных чисел,
+ * поэтому сборщику мусора почти нечего обходить.
+ */
+final class OffHeapVariableTable implements VariableStore {
+
+    /**
+     * Размер значения в байтах
+     */
+    private static final int VALUE_SIZE = Double.BYTES;
+
+    /**
+     * Наибольшее количество ячеек: прямой буфер не может быть больше 2^31 - 1 байт
+     */
+    static final int MAX_SIZE = Integer.MAX_VALUE / VALUE_SIZE;
+
+    /**
+     * Создаёт таблицу
+     * @param expectedSize Ожидаемое количество переменных; таблица сразу выделяет под них место
+     */
+    OffHeapVariableTable(int expectedSize) {
+        if (expectedSize < 0 || expectedSize > MAX_SIZE)
+            throw new IllegalArgumentException("Недопустимое количество переменных: " + expectedSize);
+        int capacity = Math.max(16, expectedSize);
+        names = new String[capacity];
+        values = ByteBuffer.allocateDirect(capacity * VALUE_SIZE).order(ByteOrder.nativeOrder());
+        index = emptyIndex(Integer.highestOneBit(Math.max(capacity, 8) - 1) << 2);
+    }
+
+    @Override
+    public int slotOf(String name) {
+        int mask = index.length - 1;
+        int i = mix(name.hashCode()) & mask;
+        for (int slot = index[i]; slot >= 0; slot = index[i]) {
+            if (names[slot].equals(name))
+                return slot;
+            i = (i + 1) & mask;
+        }
+        if (size == MAX_SIZE)
+            throw new IllegalStateException("Превышено наибольшее количество переменных: " + MAX_SIZE);
+        if (size == names.length)
+            growSlots();
+        int slot = size++;
+        names[slot] = name;
+        values.putLong(slot * VALUE_SIZE, UNDEFINED);
+        index[i] = slot;
+        //таблица номеров заполнена не более чем наполовину, поэтому поиск короткий и всегда находит пустую ячейку
+        if (size * 2 > index.length)
+            growIndex();
+        return slot;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        int mask = index.length - 1;
+        int i = mix(name.hashCode()) & mask;
+        for (int slot = index[i]; slot >= 0; slot = index[i]) {
+            if (names[slot].equals(name))
+                return isDefined(slot);
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isDefined(int slot) {
+        return bits(slot) != UNDEFINED;
+    }
+
+    @Override
+    public double get(int slot) {
+        return Double.longBitsToDouble(bits(slot));
+    }
+
+    @Override
+    public void set(int slot, double value) {
+        checkSlot(slot);
+        values.putLong(slot * VALUE_SIZE, Double.doubleToLongBits(value));
+    }
+
+    @Override
+    public String name(int slot) {
+        checkSlot(slot);
+        return names[slot];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private long bits(int slot) {
+        checkSlot(slot);
+        return values.getLong(slot * VALUE_SIZE);
+    }
+
+    /**
+     * Буфер больше занятой части, поэтому без проверки номер несуществующей ячейки читался бы как значение
+     */
+    private void checkSlot(int slot) {
+        if (slot >= size)
+            throw new IndexOutOfBoundsException(slot);
+    }
+
+    private void growSlots() {
+        int capacity = (int) Math.min((long) names.length * 2, MAX_SIZE);
+        names = Arrays.copyOf(names, capacity);
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity * VALUE_SIZE).order(ByteOrder.nativeOrder());
+        grown.put(0, values, 0, size * VALUE_SIZE);
+        values = grown;
+    }
+
+    private void growIndex() {
+        int[] grown = emptyIndex(index.length * 2);
+        int mask = grown.length - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int i = mix(names[slot].hashCode()) & mask;
+            while (grown[i] >= 0)
+                i = (i + 1) & mask;
+            grown[i] = slot;
+        }
+        index = grown;
+    }
+
+    private static int[] emptyIndex(int length) {
+        int[] index = new int[length];
+        Arrays.fill(index, -1);
+        return index;
+    }
+
+    /**
+     * Перемешивает биты хэша, чтобы похожие имена не скапливались в соседних ячейках
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Таблица открытой адресации: номер ячейки переменной или -1, размер - степень двойки
+     */
+    private int[] index;
+
+    /**
+     * Названия переменных по номерам ячеек
+     */
+    private String[] names;
+
+    /**
+     * Битовые представления значений по номерам ячеек, вне кучи
+     */
+    private ByteBuffer values;
+
+    /**
+     * Количество занятых ячеек
+     */
+    private int size;
+}
@@ -0,0 +1,101 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.*;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+/**
+ * Операции с проверками, общие для всех способов вычисления выражений.
+ * Здесь собраны все ошибки вычисления, чтобы любой способ вычисления выбрасывал одинаковые исключения.
+ */
+final class Operations {
+
+    private Operations() {
+    }
+
+    static final String DIVISION_BY_ZERO = "деление на ноль";
+    static final String NEGATIVE_BASE = "возведение отрицательного числа в степень";
+    static final String NOT_A_NUMBER = "Некорректные значения аргументов функций";
+
+    /**
+     * Читает значение переменной
+     * @param variables Хранилище переменных
+     * @param slot Номер ячейки переменной
+     * @return Значение переменной
+     * @throws ExpressionException Выбрасывается, если переменной не присвоено значение
+     */
+    static double variable(VariableStore variables, int slot) throws ExpressionException {
+        if (!variables.isDefined(slot))
+            throw new ExpressionException(Reason.UNKNOWN_VARIABLE, "неизвестный токен " + variables.name(slot));
+        return variables.get(slot);
+    }
+
+    /**
+     * Делит одно число на другое
+     * @param left Делимое
+     * @param right Делитель
+     * @return Частное
+     * @throws ExpressionException Выбрасывается при делении на ноль
+     */
+    static double divide(double left, double right) throws ExpressionException {
+        if (right == 0)
+            throw new ExpressionException(Reason.DIVISION_BY_ZERO, DIVISION_BY_ZERO);
+        return left / right;
+    }
+
+    /**
+     * Возводит число в степень
+     * @param base Основание
+     * @param power Показатель степени
+     * @return Степень
+     * @throws ExpressionException Выбрасывается при отрицательном основании
+     */
+    static double power(double base, double power) throws ExpressionException {
+        if (base < 0)
+            throw new ExpressionException(Reason.NEGATIVE_BASE, NEGATIVE_BASE);
+        return Math.pow(base, power);
+    }
+
+    /**
+     * Выполняет бинарный оператор
+     * @param operator Символ оператора: + - * / ^
+     * @param left Левый операнд
+     * @param right Правый операнд
+     * @return Результат оператора
+     * @throws ExpressionException Выбрасывается при делении на ноль или отрицательном основании степени
+     */
+    static double binary(char operator, double left, double right) throws ExpressionException {
+        return switch (operator) {
+            case '+' -> left + right;
+            case '-' -> left - right;
+            case '*' -> left * right;
+            case '/' -> divide(left, right);
+            default -> power(left, right);
+        };
+    }
+
+    /**
+     * Проверяет итоговое значение выражения
+     * @param value Значение выражения
+     * @return То же значение
+     * @throws ExpressionException Выбрасывается, если значение не является числом
+     */
+    static double result(double value) throws ExpressionException {
+        if (Double.isNaN(value))
+            throw new ExpressionException(Reason.NOT_A_NUMBER, NOT_A_NUMBER);
+        return value;
+    }
+
+    /**
+     * Вызывает функцию узла
+     * @param call Узел вызова функции
+     * @param arguments Значения аргументов
+     * @return Значение функции
+     */
+    static double call(Node.FunctionCall call, double[] arguments) {
+        if (call instanceof Node.Call unary)
+            return unary.function().applyAsDouble(arguments[0]);
+        if (call instanceof Node.BinaryCall binary)
+            return binary.function().applyAsDouble(arguments[0], arguments[1]);
+        return ((Node.NaryCall) call).function().applyAsDouble(arguments);
+    }
+}
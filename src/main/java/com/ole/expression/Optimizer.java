@@ -0,0 +1,239 @@
+package com.ole.expression;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ole.expression.exceptions.*;
+
+/**
+ * Оптимизация дерева выражения между разбором и вычислением.
+ * <ul>
+ *     <li>Свёртка констант: поддеревья из литералов, констант и встроенных функций вычисляются при компиляции.
+ *     Свёртка выполняется через {@link Operations}, поэтому деление на ноль и возведение отрицательного числа
+ *     в степень выбрасывают то же ExpressionException, только при компиляции.</li>
+ *     <li>Тождества, не меняющие результат ни для одного значения, включая NaN, бесконечности и -0:
+ *     x*1, 1*x, x/1, x-0, x*(-1), --x, x+(-y), x-(-y).
+ *     Тождество x+0 не применяется, так как -0 + 0 = +0, а x^1 - так как при отрицательном x должна остаться ошибка.</li>
+ *     <li>Общие подвыражения: одинаковые поддеревья заменяются одним экземпляром узла.
+ *     {@link StackProgram} и {@link JitCompiler} вычисляют такой узел один раз и запоминают значение.</li>
+ * </ul>
+ * Пользовательские функции не сворачиваются и их одинаковые вызовы не объединяются, поскольку функция может
+ * зависеть не только от аргумента или иметь побочные эффекты; каждый вызов в выражении выполняется.
+ */
+final class Optimizer {
+
+    private Optimizer() {
+    }
+
+    /**
+     * Оптимизирует дерево выражения
+     * @param root Корень дерева
+     * @return Корень оптимизированного дерева, в котором одинаковые поддеревья - один и тот же объект
+     * @throws ExpressionException Выбрасывается, если при свёртке констант возникла ошибка вычисления
+     */
+    static Node optimize(Node root) throws ExpressionException {
+        return new Optimizer().rewrite(root);
+    }
+
+    /**
+     * Находит узлы, на которые оптимизированное дерево ссылается более одного раза.
+     * Внутри повторяющегося узла повторы не учитываются, так как он целиком вычисляется один раз.
+     * @param root Корень оптимизированного дерева
+     * @return Множество повторяющихся узлов с операциями; литералы и переменные в него не входят
+     */
+    static Set<Node> sharedNodes(Node root) {
+        Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Node> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            if (node instanceof Node.Literal || node instanceof Node.Constant || node instanceof Node.Variable)
+                continue;
+            if (!seen.add(node)) {
+                shared.add(node);
+                continue;
+            }
+            for (Node child : node.children())
+                pending.push(child);
+        }
+        return shared;
+    }
+
+    /**
+     * Уже построенные узлы по их ключам; по ним одинаковые поддеревья заменяются одним объектом
+     */
+    private final Map<Object, Node> nodes = new HashMap<>();
+
+    /**
+     * Переписывает дерево от листьев к корню с явным стеком, поэтому глубина выражения не ограничена стеком потока.
+     * Переписанные дочерние узлы лежат на стеке результатов подряд в порядке аргументов.
+     * Дерево разбора не содержит общих узлов; если они всё же есть, каждый переписывается заново и объединяется в {@link #intern}.
+     */
+    private Node rewrite(Node root) throws ExpressionException {
+        Node[] path = new Node[16];
+        int[] next = new int[16];
+        Node[] results = new Node[16];
+        int depth = 0;
+        int size = 0;
+        path[0] = root;
+        while (depth >= 0) {
+            Node node = path[depth];
+            List<Node> children = node.children();
+            if (next[depth] < children.size()) {
+                Node child = children.get(next[depth]++);
+                if (++depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                    next = Arrays.copyOf(next, depth * 2);
+                }
+                path[depth] = child;
+                next[depth] = 0;
+                continue;
+            }
+            depth--;
+            size -= children.size();
+            Node result = intern(rewrite(node, results, size));
+            if (size == results.length)
+                results = Arrays.copyOf(results, size * 2);
+            results[size++] = result;
+        }
+        return results[0];
+    }
+
+    /**
+     * Переписывает узел
+     * @param arguments Стек результатов, на котором лежат переписанные дочерние узлы
+     * @param first Положение первого дочернего узла на стеке
+     */
+    private Node rewrite(Node node, Node[] arguments, int first) throws ExpressionException {
+        if (node instanceof Node.Constant constant)
+            return new Node.Literal(constant.value());
+        if (node instanceof Node.Negation)
+            return negate(arguments[first]);
+        if (node instanceof Node.Binary binary)
+            return binary(binary.operator(), arguments[first], arguments[first + 1]);
+        if (node instanceof Node.Call call) {
+            Node argument = arguments[first];
+            if (argument instanceof Node.Literal literal && BuiltinFunctions.mathMethod(call.function()) != null)
+                return new Node.Literal(call.function().applyAsDouble(literal.value()));
+            return new Node.Call(call.name(), call.function(), argument);
+        }
+        if (node instanceof Node.BinaryCall call)
+            return new Node.BinaryCall(call.name(), call.function(), arguments[first], arguments[first + 1]);
+        if (node instanceof Node.NaryCall call)
+            return new Node.NaryCall(call.name(), call.function(),
+                    Arrays.asList(arguments).subList(first, first + call.arguments().size()));
+        return node;
+    }
+
+    private static Node negate(Node operand) {
+        if (operand instanceof Node.Literal literal)
+            return new Node.Literal(-literal.value());
+        if (operand instanceof Node.Negation negation)
+            return negation.operand();
+        return new Node.Negation(operand);
+    }
+
+    private Node binary(char operator, Node left, Node right) throws ExpressionException {
+        if (left instanceof Node.Literal l && right instanceof Node.Literal r)
+            return new Node.Literal(Operations.binary(operator, l.value(), r.value()));
+        switch (operator) {
+            case '*' -> {
+                if (isLiteral(right, 1))
+                    return left;
+                if (isLiteral(left, 1))
+                    return right;
+                if (isLiteral(right, -1))
+                    return intern(negate(left));
+            }
+            case '/' -> {
+                if (isLiteral(right, 1))
+                    return left;
+            }
+            case '+' -> {
+                if (right instanceof Node.Negation negation)
+                    return binary('-', left, negation.operand());
+            }
+            case '-' -> {
+                if (right instanceof Node.Literal literal && Double.doubleToRawLongBits(literal.value()) == 0L)
+                    return left;
+                if (right instanceof Node.Negation negation)
+                    return binary('+', left, negation.operand());
+            }
+        }
+        return new Node.Binary(operator, left, right);
+    }
+
+    private Node intern(Node node) {
+        if (isUserCall(node))
+            return node;
+        Node existing = nodes.putIfAbsent(key(node), node);
+        return existing == null ? node : existing;
+    }
+
+    /**
+     * Возвращает ключ узла для поиска одинаковых поддеревьев.
+     * Листья сравниваются как записи, у остальных узлов дочерние узлы уже заменены единственными экземплярами,
+     * поэтому они сравниваются по ссылке и рекурсивные equals и hashCode записей не вызываются.
+     */
+    private static Object key(Node node) {
+        if (node instanceof Node.Literal || node instanceof Node.Constant || node instanceof Node.Variable)
+            return node;
+        if (node instanceof Node.Binary binary)
+            return new Key(binary.operator(), node.children());
+        if (node instanceof Node.Call call)
+            return new Key(call.function(), node.children());
+        return new Key(Node.Negation.class, node.children());
+    }
+
+    /**
+     * Ключ узла с операцией: оператор, функция или класс узла и дочерние узлы, сравниваемые по ссылке
+     */
+    private static final class Key {
+        Key(Object operation, List<Node> children) {
+            this.operation = operation;
+            this.children = children;
+            int hash = operation.hashCode();
+            for (Node child : children)
+                hash = hash * 31 + System.identityHashCode(child);
+            this.hash = hash;
+        }
+
+        private final Object operation;
+        private final List<Node> children;
+        private final int hash;
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key key) || key.hash != hash || !key.operation.equals(operation)
+                    || key.children.size() != children.size())
+                return false;
+            for (int i = 0; i < children.size(); i++)
+                if (key.children.get(i) != children.get(i))
+                    return false;
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static boolean isUserCall(Node node) {
+        if (node instanceof Node.Call call)
+            return BuiltinFunctions.mathMethod(call.function()) == null;
+        return node instanceof Node.BinaryCall || node instanceof Node.NaryCall;
+    }
+
+    private static boolean isLiteral(Node node, double value) {
+        return node instanceof Node.Literal literal && literal.value() == value;
+    }
+}
@@ -0,0 +1,30 @@
+package com.ole.expression;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Узлы дерева, пронумерованные в обратном порядке {@link Node#postorder(Node)}.
+ * Дочерние узлы записаны номерами, поэтому значения узлов можно хранить в массиве, индексированном номером узла,
+ * а не в отображении по узлам. Корень - последний узел.
+ * @param nodes Узлы; узел, на который ссылаются несколько раз, входит однажды
+ * @param children Номера дочерних узлов каждого узла, они всегда меньше номера самого узла
+ */
+record Postorder(Node[] nodes, int[][] children) {
+
+    /**
+     * Нумерует узлы дерева
+     * @param root Корень дерева
+     * @return Пронумерованные узлы
+     */
+    static Postorder of(Node root) {
+        Node[] nodes = Node.postorder(root).toArray(new Node[0]);
+        Map<Node, Integer> numbers = new IdentityHashMap<>();
+        for (int i = 0; i < nodes.length; i++)
+            numbers.put(nodes[i], i);
+        int[][] children = new int[nodes.length][];
+        for (int i = 0; i < nodes.length; i++)
+            children[i] = nodes[i].children().stream().mapToInt(numbers::get).toArray();
+        return new Postorder(nodes, children);
+    }
+}
@@ -0,0 +1,197 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Вычисление сценария присваиваний с учётом зависимостей между ними.
+ * <p>
+ * По переменным, которые читает каждое выражение, строится граф зависимостей, и присваивания делятся на уровни:
+ * выражения одного уровня зависят только от переменных предыдущих уровней или от переменных вне сценария.
+ * Выражения уровня вычисляются параллельно в пуле потоков без записи в хранилище,
+ * после чего значения записываются в переменные решателя из вызывающего потока.
+ * Поэтому во время параллельного вычисления хранилище только читается, а ячейки всех переменных созданы заранее при компиляции.
+ * В реактивном режиме решателя присвоения уровня запоминаются как формулы, как при {@link ExpressionSolver#evaluate(String)},
+ * поэтому зависящие от них формулы пересчитываются, а слушатели получают новые значения.
+ */
+final class ScriptEvaluator {
+
+    /**
+     * Количество выражений, которое выгоднее вычислить в одном потоке, чем делить дальше
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 16;
+
+    ScriptEvaluator(List<CompiledExpression> expressions, DependencyTracker tracker) throws ExpressionException {
+        this.expressions = expressions;
+        this.tracker = tracker;
+        this.levels = schedule(expressions);
+    }
+
+    /**
+     * Вычисляет сценарий уровень за уровнем
+     * @param pool Пул потоков для вычисления выражений одного уровня
+     * @return Значения присвоенных переменных в порядке сценария
+     * @throws ExpressionException Ошибка выражения с наименьшим номером строки в уровне, где она возникла.
+     * Переменные предыдущих уровней к этому моменту уже записаны.
+     */
+    Map<String, Double> evaluate(ForkJoinPool pool) throws ExpressionException {
+        int count = expressions.size();
+        double[] values = new double[count];
+        ExpressionException[] errors = new ExpressionException[count];
+        for (int[] level : levels) {
+            if (level.length <= SEQUENTIAL_THRESHOLD)
+                new Level(level, 0, level.length, values, errors).compute();
+            else
+                pool.invoke(new Level(level, 0, level.length, values, errors));
+
+            for (int index : level)
+                if (errors[index] != null)
+                    throw errors[index];
+            for (int index : level) {
+                if (tracker != null)
+                    tracker.define(expressions.get(index), values[index]);
+                else
+                    expressions.get(index).store(values[index]);
+            }
+        }
+
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++)
+            result.put(expressions.get(i).getTarget(), values[i]);
+        return result;
+    }
+
+    /**
+     * Делит присваивания на уровни алгоритмом Кана
+     * @param expressions Присваивания сценария
+     * @return Номера выражений по уровням, внутри уровня в порядке сценария
+     * @throws ExpressionException Выбрасывается, если переменная присваивается дважды или зависимости образуют цикл
+     */
+    private static List<int[]> schedule(List<CompiledExpression> expressions) throws ExpressionException {
+        int count = expressions.size();
+        Map<String, Integer> assigned = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String target = expressions.get(i).getTarget();
+            if (assigned.putIfAbsent(target, i) != null)
+                throw new ExpressionException(Reason.INVALID_SCRIPT, "Переменная присваивается в сценарии более одного раза: " + target);
+        }
+
+        //dependencies[i] - выражения, значения которых читает выражение i
+        int[][] dependencies = new int[count][];
+        int[] pending = new int[count];
+        List<List<Integer>> dependents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            dependents.add(new ArrayList<>());
+        for (int i = 0; i < count; i++) {
+            dependencies[i] = Node.variableNames(expressions.get(i).root()).stream().filter(assigned::containsKey).mapToInt(assigned::get).toArray();
+            pending[i] = dependencies[i].length;
+            for (int dependency : dependencies[i])
+                dependents.get(dependency).add(i);
+        }
+
+        List<int[]> levels = new ArrayList<>();
+        int[] current = IntStream.range(0, count).filter(i -> pending[i] == 0).toArray();
+        int scheduled = 0;
+        while (current.length > 0) {
+            levels.add(current);
+            scheduled += current.length;
+            List<Integer> next = new ArrayList<>();
+            for (int index : current)
+                for (int dependent : dependents.get(index))
+                    if (--pending[dependent] == 0)
+                        next.add(dependent);
+            current = next.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+        if (scheduled < count)
+            throw new ExpressionException(Reason.DEPENDENCY_CYCLE, "Циклическая зависимость переменных: " + findCycle(expressions, dependencies, pending));
+        return levels;
+    }
+
+    /**
+     * Находит цикл среди выражений, которые не удалось распределить по уровням.
+     * У каждого такого выражения есть нераспределённая зависимость, поэтому переход по ним рано или поздно замыкается.
+     * @return Цикл в виде a -> b -> a
+     */
+    private static String findCycle(List<CompiledExpression> expressions, int[][] dependencies, int[] pending) {
+        int start = 0;
+        while (pending[start] == 0)
+            start++;
+        Map<Integer, Integer> visited = new LinkedHashMap<>();
+        List<Integer> path = new ArrayList<>();
+        int current = start;
+        while (!visited.containsKey(current)) {
+            visited.put(current, path.size());
+            path.add(current);
+            for (int dependency : dependencies[current]) {
+                if (pending[dependency] > 0) {
+                    current = dependency;
+                    break;
+                }
+            }
+        }
+        StringJoiner cycle = new StringJoiner(" -> ");
+        for (int index : path.subList(visited.get(current), path.size()))
+            cycle.add(expressions.get(index).getTarget());
+        cycle.add(expressions.get(current).getTarget());
+        return cycle.toString();
+    }
+
+    /**
+     * Параллельное вычисление части уровня
+     */
+    private final class Level extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        Level(int[] level, int from, int to, double[] values, ExpressionException[] errors) {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+            this.values = values;
+            this.errors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SEQUENTIAL_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Level(level, from, middle, values, errors), new Level(level, middle, to, values, errors));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int index = level[i];
+                try {
+                    values[index] = expressions.get(index).compute();
+                } catch (ExpressionException ex) {
+                    errors[index] = ex;
+                }
+            }
+        }
+
+        private final int[] level;
+        private final int from;
+        private final int to;
+        private final double[] values;
+        private final ExpressionException[] errors;
+    }
+
+    /**
+     * Присваивания сценария в исходном порядке
+     */
+    private final List<CompiledExpression> expressions;
+
+    /**
+     * Формулы реактивного режима решателя либо null, если режим выключен
+     */
+    private final DependencyTracker tracker;
+
+    /**
+     * Номера выражений по уровням
+     */
+    private final List<int[]> levels;
+}
@@ -0,0 +1,97 @@
+package com.ole.expression;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Реализация {@link SolverMetricsMXBean}: каждый атрибут читается из свежего снимка показателей решателя
+ */
+final class SolverMetrics implements SolverMetricsMXBean {
+
+    SolverMetrics(ExpressionSolver expressionSolver) {
+        this.expressionSolver = expressionSolver;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return expressionSolver.isMetricsEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        expressionSolver.setMetricsEnabled(enabled);
+    }
+
+    @Override
+    public long getParseCount() {
+        return snapshot().parse().count();
+    }
+
+    @Override
+    public double getParseMeanNanos() {
+        return snapshot().parse().meanNanos();
+    }
+
+    @Override
+    public long getParseP99Nanos() {
+        return snapshot().parse().percentileNanos(0.99);
+    }
+
+    @Override
+    public long getEvaluateCount() {
+        return snapshot().evaluate().count();
+    }
+
+    @Override
+    public double getEvaluateMeanNanos() {
+        return snapshot().evaluate().meanNanos();
+    }
+
+    @Override
+    public long getEvaluateP99Nanos() {
+        return snapshot().evaluate().percentileNanos(0.99);
+    }
+
+    @Override
+    public long getBatchRows() {
+        return snapshot().batchRows();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return snapshot().cache().hits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return snapshot().cache().misses();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        return snapshot().cache().hitRate();
+    }
+
+    @Override
+    public Map<String, Long> getFunctionCalls() {
+        return new TreeMap<>(snapshot().functionCalls());
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> errors = new TreeMap<>();
+        snapshot().errors().forEach((reason, count) -> errors.put(reason.name(), count));
+        return errors;
+    }
+
+    @Override
+    public void reset() {
+        expressionSolver.resetMetrics();
+    }
+
+    private MetricsSnapshot snapshot() {
+        return expressionSolver.getMetrics();
+    }
+
+    private final ExpressionSolver expressionSolver;
+}
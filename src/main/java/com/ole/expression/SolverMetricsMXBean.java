@@ -0,0 +1,49 @@
+package com.ole.expression;
+
+import java.util.Map;
+
+/**
+ * Показатели решателя, доступные через JMX.
+ * Регистрируется методом {@link ExpressionSolver#registerMetrics(String)}.
+ */
+public interface SolverMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getParseCount();
+
+    double getParseMeanNanos();
+
+    long getParseP99Nanos();
+
+    long getEvaluateCount();
+
+    double getEvaluateMeanNanos();
+
+    long getEvaluateP99Nanos();
+
+    long getBatchRows();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRate();
+
+    /**
+     * Количество вызовов функций по названиям
+     */
+    Map<String, Long> getFunctionCalls();
+
+    /**
+     * Количество ошибок по причинам
+     */
+    Map<String, Long> getErrors();
+
+    /**
+     * Обнуляет показатели; счётчики кэша не обнуляются
+     */
+    void reset();
+}
@@ -0,0 +1,308 @@
+package com.ole.expression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import com.ole.expression.exceptions.*;
+
+/**
+ * Линейная программа стековой машины, полученная из дерева выражения.
+ * Каждая инструкция - число, в младших 8 битах которого код операции, а в старших - операнд
+ * (номер литерала, ячейки переменной или функции).
+ * Функции одного и двух аргументов вызываются со значениями из стека, функциям большего числа аргументов
+ * передаётся новый массив аргументов. Литералы разобраны заранее, имена заменены номерами,
+ * а стек операндов - примитивный массив, поэтому вычисление не создаёт объектов, кроме массивов аргументов.
+ * Повторяющиеся подвыражения вычисляются один раз: значение сохраняется инструкцией STORE
+ * во временную ячейку за стеком операндов и далее загружается инструкцией LOAD.
+ */
+final class StackProgram implements Evaluator {
+
+    static final int LITERAL = 0;
+    static final int VARIABLE = 1;
+    static final int NEGATE = 2;
+    static final int ADD = 3;
+    static final int SUBTRACT = 4;
+    static final int MULTIPLY = 5;
+    static final int DIVIDE = 6;
+    static final int POWER = 7;
+    static final int CALL = 8;
+    static final int STORE = 9;
+    static final int LOAD = 10;
+    static final int CALL2 = 11;
+    static final int CALLN = 12;
+
+    private StackProgram(int[] code, double[] literals, DoubleUnaryOperator[] functions, DoubleBinaryOperator[] binaryFunctions,
+                         DoubleNaryOperator[] naryFunctions, int[] naryArities, int maxStack, int temporaries) {
+        this.code = code;
+        this.literals = literals;
+        this.functions = functions;
+        this.binaryFunctions = binaryFunctions;
+        this.naryFunctions = naryFunctions;
+        this.naryArities = naryArities;
+        this.maxStack = maxStack;
+        this.temporaries = temporaries;
+    }
+
+    /**
+     * Переводит дерево выражения в программу
+     * @param root Корень дерева
+     * @return Программа
+     */
+    static StackProgram compile(Node root) {
+        Assembler assembler = new Assembler(Optimizer.sharedNodes(root));
+        assembler.emit(root);
+        return new StackProgram(Arrays.copyOf(assembler.code, assembler.size),
+                assembler.literals.stream().mapToDouble(Double::doubleValue).toArray(),
+                assembler.functions.toArray(new DoubleUnaryOperator[0]),
+                assembler.binaryFunctions.toArray(new DoubleBinaryOperator[0]),
+                assembler.naryFunctions.toArray(new DoubleNaryOperator[0]),
+                assembler.naryArities.stream().mapToInt(Integer::intValue).toArray(),
+                assembler.maxDepth,
+                assembler.temporaries.size());
+    }
+
+    /**
+     * Выполняет программу
+     * @param variables Хранилище переменных
+     * @return Значение выражения
+     * @throws ExpressionException Выбрасывается при ошибках в вычислении
+     */
+    @Override
+    public double evaluate(VariableStore variables) throws ExpressionException {
+        Buffer buffer = STACK.get();
+        //функция пользователя может вычислять другое выражение в том же потоке - ему нужен свой стек
+        if (buffer.inUse)
+            return run(new double[maxStack + temporaries], variables);
+        if (buffer.stack.length < maxStack + temporaries)
+            buffer.stack = new double[maxStack + temporaries];
+        buffer.inUse = true;
+        try {
+            return run(buffer.stack, variables);
+        } finally {
+            buffer.inUse = false;
+        }
+    }
+
+    private double run(double[] stack, VariableStore variables) throws ExpressionException {
+        int top = -1;
+        for (int instruction : code) {
+            int operand = instruction >>> 8;
+            switch (instruction & 0xFF) {
+                case LITERAL -> stack[++top] = literals[operand];
+                case VARIABLE -> stack[++top] = Operations.variable(variables, operand);
+                case NEGATE -> stack[top] = -stack[top];
+                case ADD -> {
+                    top--;
+                    stack[top] = stack[top] + stack[top + 1];
+                }
+                case SUBTRACT -> {
+                    top--;
+                    stack[top] = stack[top] - stack[top + 1];
+                }
+                case MULTIPLY -> {
+                    top--;
+                    stack[top] = stack[top] * stack[top + 1];
+                }
+                case DIVIDE -> {
+                    top--;
+                    stack[top] = Operations.divide(stack[top], stack[top + 1]);
+                }
+                case POWER -> {
+                    top--;
+                    stack[top] = Operations.power(stack[top], stack[top + 1]);
+                }
+                case CALL -> stack[top] = functions[operand].applyAsDouble(stack[top]);
+                case CALL2 -> {
+                    top--;
+                    stack[top] = binaryFunctions[operand].applyAsDouble(stack[top], stack[top + 1]);
+                }
+                case CALLN -> {
+                    int arity = naryArities[operand];
+                    double[] arguments = Arrays.copyOfRange(stack, top - arity + 1, top + 1);
+                    top -= arity - 1;
+                    stack[top] = naryFunctions[operand].applyAsDouble(arguments);
+                }
+                case STORE -> stack[maxStack + operand] = stack[top];
+                case LOAD -> stack[++top] = stack[maxStack + operand];
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Стек операндов, свой для каждого потока
+     */
+    private static final ThreadLocal<Buffer> STACK = ThreadLocal.withInitial(Buffer::new);
+
+    /**
+     * Стек операндов потока и признак того, что он занят выполняемой программой
+     */
+    private static final class Buffer {
+        double[] stack = new double[16];
+        boolean inUse;
+    }
+
+    /**
+     * Инструкции программы
+     */
+    final int[] code;
+
+    /**
+     * Значения литералов и констант
+     */
+    final double[] literals;
+
+    /**
+     * Вызываемые функции
+     */
+    final DoubleUnaryOperator[] functions;
+
+    /**
+     * Вызываемые функции двух аргументов
+     */
+    final DoubleBinaryOperator[] binaryFunctions;
+
+    /**
+     * Вызываемые функции с аргументами в массиве и количество их аргументов
+     */
+    final DoubleNaryOperator[] naryFunctions;
+    final int[] naryArities;
+
+    /**
+     * Наибольшая глубина стека операндов
+     */
+    final int maxStack;
+
+    /**
+     * Количество временных ячеек для повторяющихся подвыражений
+     */
+    final int temporaries;
+
+    /**
+     * Собирает программу обходом дерева в обратном порядке
+     */
+    private static final class Assembler {
+        Assembler(Set<Node> shared) {
+            this.shared = shared;
+        }
+
+        private final Set<Node> shared;
+        private final Map<Node, Integer> temporaries = new IdentityHashMap<>();
+        private int[] code = new int[16];
+        private int size;
+        private int depth;
+        private int maxDepth;
+        private final List<Double> literals = new ArrayList<>();
+        private final Map<Double, Integer> literalIndexes = new HashMap<>();
+        private final List<DoubleUnaryOperator> functions = new ArrayList<>();
+        private final List<DoubleBinaryOperator> binaryFunctions = new ArrayList<>();
+        private final List<DoubleNaryOperator> naryFunctions = new ArrayList<>();
+        private final List<Integer> naryArities = new ArrayList<>();
+
+        /**
+         * Обходит дерево с явным стеком, поэтому глубина выражения не ограничена стеком потока
+         */
+        void emit(Node root) {
+            Node[] path = new Node[16];
+            int[] next = new int[16];
+            int depth = -1;
+            Node node = root;
+            while (true) {
+                if (node != null) {
+                    Integer temporary = temporaries.get(node);
+                    if (temporary != null)
+                        push(LOAD, temporary, 1);
+                    else {
+                        if (++depth == path.length) {
+                            path = Arrays.copyOf(path, depth * 2);
+                            next = Arrays.copyOf(next, depth * 2);
+                        }
+                        path[depth] = node;
+                        next[depth] = 0;
+                    }
+                    node = null;
+                }
+                if (depth < 0)
+                    return;
+                Node current = path[depth];
+                List<Node> children = current.children();
+                if (next[depth] < children.size()) {
+                    node = children.get(next[depth]++);
+                    continue;
+                }
+                depth--;
+                emitOperation(current);
+                if (shared.contains(current)) {
+                    Integer temporary = temporaries.size();
+                    temporaries.put(current, temporary);
+                    push(STORE, temporary, 0);
+                }
+            }
+        }
+
+        /**
+         * Добавляет инструкцию узла; инструкции дочерних узлов к этому моменту уже добавлены
+         */
+        private void emitOperation(Node node) {
+            if (node instanceof Node.Literal literal)
+                push(LITERAL, literal(literal.value()), 1);
+            else if (node instanceof Node.Constant constant)
+                push(LITERAL, literal(constant.value()), 1);
+            else if (node instanceof Node.Variable variable)
+                push(VARIABLE, variable.slot(), 1);
+            else if (node instanceof Node.Negation)
+                push(NEGATE, 0, 0);
+            else if (node instanceof Node.Binary binary) {
+                push(switch (binary.operator()) {
+                    case '+' -> ADD;
+                    case '-' -> SUBTRACT;
+                    case '*' -> MULTIPLY;
+                    case '/' -> DIVIDE;
+                    default -> POWER;
+                }, 0, -1);
+            }
+            else if (node instanceof Node.Call call)
+                push(CALL, indexOf(functions, call.function()), 0);
+            else if (node instanceof Node.BinaryCall call)
+                push(CALL2, indexOf(binaryFunctions, call.function()), -1);
+            else if (node instanceof Node.NaryCall call) {
+                int index = indexOf(naryFunctions, call.function());
+                if (index == naryArities.size())
+                    naryArities.add(call.arguments().size());
+                push(CALLN, index, 1 - call.arguments().size());
+            }
+        }
+
+        private static <T> int indexOf(List<T> functions, T function) {
+            int index = functions.indexOf(function);
+            if (index < 0) {
+                index = functions.size();
+                functions.add(function);
+            }
+            return index;
+        }
+
+        private int literal(double value) {
+            Integer index = literalIndexes.putIfAbsent(value, literals.size());
+            if (index != null)
+                return index;
+            literals.add(value);
+            return literals.size() - 1;
+        }
+
+        private void push(int opcode, int operand, int stackEffect) {
+            if (size == code.length)
+                code = Arrays.copyOf(code, size * 2);
+            code[size++] = opcode | operand << 8;
+            depth += stackEffect;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+    }
+}
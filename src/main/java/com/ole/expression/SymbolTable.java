@@ -0,0 +1,100 @@
+package com.ole.expression;
+
+/**
+ * Таблица имён, которая находит строку имени по участку последовательности символов без создания новой строки.
+ * Одинаковые имена всегда возвращаются одним и тем же экземпляром строки.
+ * <p>
+ * Поиск выполняется без блокировок. Добавление происходит под блокировкой: новое имя записывается в пустую ячейку
+ * текущего массива, а при расширении новый массив заполняется целиком и публикуется через volatile-поле.
+ * Читатель, не увидевший только что добавленное имя, повторяет поиск под блокировкой.
+ */
+final class SymbolTable {
+
+    /**
+     * Возвращает строку имени для участка последовательности
+     * @param text Последовательность символов
+     * @param start Начало имени
+     * @param end Конец имени, не включительно
+     * @return Строка имени
+     */
+    String intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        String found = find(table, hash, text, start, end);
+        return found != null ? found : insert(hash, text, start, end);
+    }
+
+    private synchronized String insert(int hash, CharSequence text, int start, int end) {
+        String[] table = this.table;
+        String found = find(table, hash, text, start, end);
+        if (found != null)
+            return found;
+        String name = text.subSequence(start, end).toString();
+        if ((size + 1) * 2 > table.length) {
+            String[] grown = new String[table.length * 2];
+            for (String existing : table)
+                if (existing != null)
+                    place(grown, existing);
+            place(grown, name);
+            this.table = grown;
+        }
+        else
+            place(table, name);
+        size++;
+        return name;
+    }
+
+    private static String find(String[] table, int hash, CharSequence text, int start, int end) {
+        int mask = table.length - 1;
+        for (int i = mix(hash) & mask; ; i = (i + 1) & mask) {
+            String candidate = table[i];
+            if (candidate == null)
+                return null;
+            if (candidate.hashCode() == hash && matches(candidate, text, start, end))
+                return candidate;
+        }
+    }
+
+    private static void place(String[] table, String name) {
+        int mask = table.length - 1;
+        int i = mix(name.hashCode()) & mask;
+        while (table[i] != null)
+            i = (i + 1) & mask;
+        table[i] = name;
+    }
+
+    private static boolean matches(String candidate, CharSequence text, int start, int end) {
+        if (candidate.length() != end - start)
+            return false;
+        for (int i = start; i < end; i++)
+            if (candidate.charAt(i - start) != text.charAt(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Хэш участка, совпадающий с {@link String#hashCode()} строки из тех же символов
+     */
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + text.charAt(i);
+        return hash;
+    }
+
+    /**
+     * Перемешивает биты хэша, чтобы короткие имена не скапливались в соседних ячейках
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Ячейки открытой адресации, размер - степень двойки, заполнены не более чем наполовину
+     */
+    private volatile String[] table = new String[64];
+
+    /**
+     * Количество имён
+     */
+    private int size;
+}
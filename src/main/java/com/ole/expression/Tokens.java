@@ -0,0 +1,222 @@
+package com.ole.expression;
+
+import java.util.Arrays;
+
+/**
+ * Токены выражения, полученные за один проход по исходной последовательности символов.
+ * Токены хранятся в параллельных массивах: вид, начало в исходной последовательности, длина и значение числа.
+ * Текст токена не копируется: имена и операторы читаются из исходной последовательности по смещению.
+ */
+final class Tokens {
+
+    /**
+     * Число; значение вычислено при разборе, NaN означает неправильную запись числа
+     */
+    static final byte NUMBER = 0;
+
+    /**
+     * Имя: буква, за которой следуют буквы и цифры
+     */
+    static final byte NAME = 1;
+
+    /**
+     * Оператор или скобка из {@link #OPERATORS}
+     */
+    static final byte OPERATOR = 2;
+
+    /**
+     * Символ, который не может входить в выражение
+     */
+    static final byte UNKNOWN = 3;
+
+    /**
+     * Символы операторов. _ является репрезентацией унарного минуса, запятая разделяет аргументы функции
+     */
+    static final String OPERATORS = "()+-*/^_,";
+
+    /**
+     * Степени 10, которые представимы в double точно
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * Наибольшая мантисса, которую double хранит точно
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private Tokens(CharSequence input) {
+        this.input = input;
+    }
+
+    /**
+     * Разбивает часть последовательности на токены. Пробелы разделяют токены и пропускаются.
+     * @param input Исходная последовательность символов
+     * @param from Начало выражения
+     * @param to Конец выражения, не включительно
+     * @return Токены, смещения которых отсчитываются от начала всей последовательности
+     */
+    static Tokens scan(CharSequence input, int from, int to) {
+        Tokens tokens = new Tokens(input);
+        //номера незакрытых открывающих скобок, для подсчёта запятых внутри каждой из них
+        int[] open = new int[8];
+        int depth = 0;
+        int pos = from;
+        while (pos < to) {
+            char c = input.charAt(pos);
+            int end = pos + 1;
+            if (c == ' ') {
+                pos = end;
+                continue;
+            }
+            if (Character.isDigit(c)) {
+                while (end < to && (Character.isDigit(input.charAt(end)) || input.charAt(end) == '.'))
+                    end++;
+                tokens.add(NUMBER, pos, end, parseNumber(input, pos, end));
+            }
+            else if (Character.isLetter(c)) {
+                while (end < to && Character.isLetterOrDigit(input.charAt(end)))
+                    end++;
+                tokens.add(NAME, pos, end, 0);
+            }
+            else {
+                if (c == '(') {
+                    if (depth == open.length)
+                        open = Arrays.copyOf(open, depth * 2);
+                    open[depth++] = tokens.size;
+                }
+                else if (c == ')' && depth > 0)
+                    depth--;
+                else if (c == ',' && depth > 0)
+                    tokens.commas[open[depth - 1]]++;
+                tokens.add(OPERATORS.indexOf(c) >= 0 ? OPERATOR : UNKNOWN, pos, end, 0);
+            }
+            pos = end;
+        }
+        return tokens;
+    }
+
+    /**
+     * Разбирает запись числа из цифр и точки.
+     * Если мантисса без точки и степень 10 представимы в double точно, результат получается одним делением
+     * и округляется правильно (быстрый путь Клингера). Остальные записи разбираются {@link Double#parseDouble(String)}.
+     * @return Значение или NaN, если запись не является числом
+     */
+    static double parseNumber(CharSequence input, int start, int end) {
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c == '.' && !point)
+                point = true;
+            else if (c >= '0' && c <= '9' && mantissa <= MAX_EXACT_MANTISSA) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (point)
+                    fractionDigits++;
+            }
+            else
+                return parseSlow(input, start, end);
+        }
+        if (mantissa <= MAX_EXACT_MANTISSA && fractionDigits < POWERS_OF_TEN.length)
+            return mantissa / POWERS_OF_TEN[fractionDigits];
+        return parseSlow(input, start, end);
+    }
+
+    private static double parseSlow(CharSequence input, int start, int end) {
+        try {
+            return Double.parseDouble(input.subSequence(start, end).toString());
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    private void add(byte kind, int start, int end, double value) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            commas = Arrays.copyOf(commas, size * 2);
+        }
+        kinds[size] = kind;
+        starts[size] = start;
+        lengths[size] = end - start;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * Возвращает количество токенов
+     */
+    int size() {
+        return size;
+    }
+
+    byte kind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * Возвращает смещение первого символа токена в исходной последовательности
+     */
+    int start(int index) {
+        return starts[index];
+    }
+
+    int end(int index) {
+        return starts[index] + lengths[index];
+    }
+
+    /**
+     * Возвращает значение числа
+     */
+    double value(int index) {
+        return values[index];
+    }
+
+    /**
+     * Возвращает первый символ токена; для операторов это сам оператор
+     */
+    char symbol(int index) {
+        return input.charAt(starts[index]);
+    }
+
+    /**
+     * Проверяет, является ли токен заданным оператором
+     */
+    boolean isOperator(int index, char operator) {
+        return kinds[index] == OPERATOR && symbol(index) == operator;
+    }
+
+    /**
+     * Возвращает количество аргументов в скобках, начинающихся токеном: число запятых на их уровне вложенности плюс 1
+     * @param index Номер открывающей скобки
+     */
+    int arguments(int index) {
+        return commas[index] + 1;
+    }
+
+    /**
+     * Возвращает исходную последовательность
+     */
+    CharSequence input() {
+        return input;
+    }
+
+    /**
+     * Возвращает текст токена; используется только для сообщений об ошибках
+     */
+    String text(int index) {
+        return input.subSequence(starts[index], end(index)).toString();
+    }
+
+    private final CharSequence input;
+    private byte[] kinds = new byte[16];
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private double[] values = new double[16];
+    private int[] commas = new int[16];
+    private int size;
+}
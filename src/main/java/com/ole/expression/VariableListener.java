@@ -0,0 +1,26 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+
+/**
+ * Слушатель изменений переменных в реактивном режиме решателя.
+ * Методы вызываются в потоке, который изменил переменную, в порядке пересчёта.
+ * @see ExpressionSolver#setReactive(boolean)
+ */
+public interface VariableListener {
+
+    /**
+     * Вызывается после того, как переменная получила новое значение
+     * @param name Название переменной
+     * @param value Новое значение
+     */
+    void variableChanged(String name, double value);
+
+    /**
+     * Вызывается, если формулу переменной не удалось пересчитать. Переменная сохраняет прежнее значение.
+     * @param name Название переменной
+     * @param error Ошибка вычисления
+     */
+    default void evaluationFailed(String name, ExpressionException error) {
+    }
+}
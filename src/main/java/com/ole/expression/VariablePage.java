@@ -0,0 +1,24 @@
+package com.ole.expression;
+
+import java.util.List;
+
+/**
+ * Страница списка переменных
+ * @param variables Переменные страницы в формате «имя : значение»
+ * @param next Позиция, с которой начинается следующая страница, либо -1, если список закончился
+ * @see ExpressionSolver#getVariables(int, int)
+ */
+public record VariablePage(List<String> variables, int next) {
+
+    public VariablePage {
+        variables = List.copyOf(variables);
+    }
+
+    /**
+     * Проверяет, есть ли после этой страницы ещё переменные
+     * @return false, если страница последняя
+     */
+    public boolean hasNext() {
+        return next >= 0;
+    }
+}
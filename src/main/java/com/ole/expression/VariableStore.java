@@ -0,0 +1,66 @@
+package com.ole.expression;
+
+/**
+ * Хранилище переменных решателя.
+ * Каждому имени один раз назначается номер ячейки, после чего значение читается и пишется по номеру
+ * без поиска по имени. Ячейка может существовать без значения: так бывает, если имя встретилось
+ * в скомпилированном выражении, но переменной ещё ничего не присвоено. Ячейки не удаляются,
+ * а ячейка, получившая значение, больше не становится пустой.
+ */
+interface VariableStore {
+
+    /**
+     * Битовое представление отсутствующего значения.
+     * Это NaN с особой мантиссой: {@link Double#doubleToLongBits(double)} приводит любой NaN к каноническому виду,
+     * поэтому записанное пользователем значение с ним не совпадёт.
+     */
+    long UNDEFINED = 0x7ff8_0000_dead_beefL;
+
+    /**
+     * Возвращает номер ячейки переменной, при необходимости создавая пустую ячейку
+     * @param name Название переменной
+     * @return Номер ячейки
+     */
+    int slotOf(String name);
+
+    /**
+     * Проверяет, присвоено ли значение переменной
+     * @param name Название переменной
+     * @return true, если переменная существует и имеет значение
+     */
+    boolean contains(String name);
+
+    /**
+     * Проверяет, присвоено ли значение ячейке
+     * @param slot Номер ячейки
+     * @return true, если значение присвоено
+     */
+    boolean isDefined(int slot);
+
+    /**
+     * Возвращает значение ячейки. Перед чтением следует проверить {@link #isDefined(int)}.
+     * @param slot Номер ячейки
+     * @return Значение
+     */
+    double get(int slot);
+
+    /**
+     * Записывает значение в ячейку
+     * @param slot Номер ячейки
+     * @param value Значение
+     */
+    void set(int slot, double value);
+
+    /**
+     * Возвращает название переменной по номеру ячейки
+     * @param slot Номер ячейки
+     * @return Название переменной
+     */
+    String name(int slot);
+
+    /**
+     * Возвращает количество ячеек, включая ячейки без значения
+     * @return Количество ячеек
+     */
+    int size();
+}
@@ -0,0 +1,84 @@
+package com.ole.expression;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Однопоточная таблица переменных решателя.
+ * Значения хранятся в примитивном массиве, упаковки в Double не происходит.
+ */
+final class VariableTable implements VariableStore {
+
+    VariableTable() {
+        slots = new HashMap<>();
+        names = new String[16];
+        values = new long[16];
+    }
+
+    @Override
+    public int slotOf(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null)
+            return slot;
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = UNDEFINED;
+        slots.put(name, size);
+        return size++;
+    }
+
+    @Override
+    public boolean contains(String name) {
+        Integer slot = slots.get(name);
+        return slot != null && isDefined(slot);
+    }
+
+    @Override
+    public boolean isDefined(int slot) {
+        return values[slot] != UNDEFINED;
+    }
+
+    @Override
+    public double get(int slot) {
+        return Double.longBitsToDouble(values[slot]);
+    }
+
+    @Override
+    public void set(int slot, double value) {
+        values[slot] = Double.doubleToLongBits(value);
+    }
+
+    @Override
+    public String name(int slot) {
+        return names[slot];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Номера ячеек по названиям переменных
+     */
+    private final Map<String, Integer> slots;
+
+    /**
+     * Названия переменных по номерам ячеек
+     */
+    private String[] names;
+
+    /**
+     * Битовые представления значений по номерам ячеек
+     */
+    private long[] values;
+
+    /**
+     * Количество занятых ячеек
+     */
+    private int size;
+}
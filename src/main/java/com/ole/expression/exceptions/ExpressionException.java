@@ -5,8 +5,119 @@ package com.ole.expression.exceptions;
  * Класс исключений для класса ExpressionSolver
  */
 public class ExpressionException extends Exception{
+
+    /**
+     * Причина ошибки
+     */
+    public enum Reason {
+        /**
+         * Выражение записано неправильно: неизвестный символ, непарные скобки, лишние или пропущенные операторы
+         */
+        SYNTAX,
+        /**
+         * Недопустимое имя переменной в присваивании
+         */
+        INVALID_NAME,
+        /**
+         * Переменной не присвоено значение
+         */
+        UNKNOWN_VARIABLE,
+        /**
+         * Деление на ноль
+         */
+        DIVISION_BY_ZERO,
+        /**
+         * Возведение отрицательного числа в степень
+         */
+        NEGATIVE_BASE,
+        /**
+         * Значение выражения не является числом
+         */
+        NOT_A_NUMBER,
+        /**
+         * Переменные зависят друг от друга по кругу
+         */
+        DEPENDENCY_CYCLE,
+        /**
+         * Сценарий присваиваний составлен неправильно
+         */
+        INVALID_SCRIPT,
+        /**
+         * Файл скомпилированных выражений повреждён, имеет другую версию формата или несовместим с решателем
+         */
+        INVALID_STORE,
+        /**
+         * Для функции не задана производная
+         */
+        NO_DERIVATIVE,
+        /**
+         * Результат целочисленного вычисления не помещается в long
+         */
+        OVERFLOW,
+        /**
+         * Значение нельзя представить точно: дробное число при целочисленном вычислении
+         * или бесконечная десятичная дробь при вычислении без ограничения точности
+         */
+        INEXACT,
+        /**
+         * Причина не указана
+         */
+        OTHER
+    }
+
     public ExpressionException(String details)
+    {
+        this(Reason.OTHER, details);
+    }
+
+    /**
+     * Создаёт исключение с указанной причиной
+     * @param reason Причина ошибки
+     * @param details Описание ошибки
+     */
+    public ExpressionException(Reason reason, String details)
     {
         super(details);
+        this.reason = reason;
+        this.column = 0;
     }
+
+    /**
+     * Создаёт исключение об ошибке в определённом месте выражения
+     * @param reason Причина ошибки
+     * @param details Описание ошибки
+     * @param column Номер символа выражения, начиная с 1
+     */
+    public ExpressionException(Reason reason, String details, int column)
+    {
+        super(details + " (позиция " + column + ")");
+        this.reason = reason;
+        this.column = column;
+    }
+
+    /**
+     * Возвращает причину ошибки
+     * @return Причина ошибки
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Возвращает номер символа выражения, в котором обнаружена ошибка
+     * @return Номер символа, начиная с 1, или 0, если место ошибки неизвестно
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Причина ошибки
+     */
+    private final Reason reason;
+
+    /**
+     * Номер символа с ошибкой, 0 - неизвестен
+     */
+    private final int column;
 }
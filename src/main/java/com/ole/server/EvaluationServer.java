@@ -0,0 +1,349 @@
+package com.ole.server;
+
+import com.ole.Program;
+import com.ole.expression.ExpressionSolver;
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Сервер вычисления выражений по сети.
+ * <p>
+ * Протокол строковый, в кодировке UTF-8: клиент присылает выражения по одному в строке, сервер на каждую строку
+ * отвечает одной строкой в том же порядке:
+ * <ul>
+ *     <li>{@code OK <значение>} - значение выражения;</li>
+ *     <li>{@code ERR <причина> <сообщение>} - ошибка вычисления, причина - {@link ExpressionException.Reason};</li>
+ *     <li>пустая строка - ответ на пустую строку.</li>
+ * </ul>
+ * Клиент может отправлять строки, не дожидаясь ответов. Все соединения обслуживает один поток с {@link Selector}:
+ * строки, прочитанные из соединения за одно чтение, вычисляются подряд, и ответы на них отправляются одной записью.
+ * Пока неотправленных ответов больше {@link #MAX_PENDING_OUTPUT} байт, сервер не читает соединение.
+ * <p>
+ * Выражения вычисляются в том же потоке, поэтому долгое вычисление (например, медленной функции пользователя
+ * или выражения из сотен тысяч операций) задерживает ответы всем соединениям, а не только своему.
+ * Сервер рассчитан на короткие выражения.
+ * <p>
+ * Каждое соединение получает свой решатель, поэтому переменные одного клиента не видны другим.
+ */
+public final class EvaluationServer implements Closeable {
+
+    /**
+     * Наибольшая длина строки в байтах; соединение со строкой длиннее закрывается
+     */
+    public static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    /**
+     * Объём неотправленных ответов, после которого соединение перестаёт читаться
+     */
+    public static final int MAX_PENDING_OUTPUT = 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final int DEFAULT_PORT = 7070;
+
+    private static final System.Logger LOG = System.getLogger(EvaluationServer.class.getName());
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        try {
+            EvaluationServer server = new EvaluationServer(new InetSocketAddress(port), EvaluationServer::newSolver);
+            server.start();
+            System.out.println("Сервер принимает соединения на порту " + server.getPort());
+            server.thread.join();
+        } catch (IOException ex) {
+            System.out.println("Ошибка ввода-вывода: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Создаёт решатель для нового соединения с теми же функциями, что и в консольной программе
+     * @return Решатель
+     */
+    static ExpressionSolver newSolver() {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setFunction("round", Program::round);
+        return expressionSolver;
+    }
+
+    /**
+     * Открывает серверный сокет. Соединения начинают обслуживаться после {@link #start()}.
+     * @param address Адрес; порт 0 означает любой свободный порт
+     * @param sessions Создаёт решатель для каждого нового соединения
+     * @throws IOException Выбрасывается, если сокет не удалось открыть
+     */
+    public EvaluationServer(InetSocketAddress address, Supplier<ExpressionSolver> sessions) throws IOException {
+        this.sessions = Objects.requireNonNull(sessions);
+        this.selector = Selector.open();
+        try {
+            this.server = ServerSocketChannel.open();
+            server.bind(address);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ex) {
+            selector.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Возвращает порт, на котором сервер принимает соединения
+     * @return Порт
+     * @throws IOException Выбрасывается, если сокет закрыт
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Запускает поток обслуживания соединений
+     * @throws IllegalStateException Выбрасывается, если сервер уже запущен
+     */
+    public synchronized void start() {
+        if (thread != null)
+            throw new IllegalStateException("Сервер уже запущен");
+        thread = new Thread(this::run, "evaluation-server");
+        thread.start();
+    }
+
+    /**
+     * Останавливает сервер и закрывает все соединения
+     * @throws IOException Выбрасывается при ошибке закрытия сокетов
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (selector.isOpen()) {
+            for (SelectionKey key : selector.keys())
+                key.channel().close();
+            selector.close();
+        }
+        server.close();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid())
+                        handle(key);
+                }
+            }
+        } catch (IOException | ClosedSelectorException ex) {
+            //селектор закрыт, сервер остановлен
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (key.isAcceptable()) {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    channel.register(selector, SelectionKey.OP_READ, new Session(channel, sessions.get()));
+                } catch (IOException | RuntimeException ex) {
+                    //соединение, которое не удалось подготовить, закрывается, сервер принимает следующие
+                    channel.close();
+                }
+            }
+            return;
+        }
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isReadable())
+                session.read();
+            if (session.hasOutput())
+                session.write();
+            if (session.isFinished())
+                session.channel.close();
+            else
+                key.interestOps(session.interestOps());
+        } catch (IOException ex) {
+            //клиент разорвал соединение или прислал слишком длинную строку
+            session.channel.close();
+        } catch (RuntimeException ex) {
+            //непредвиденная ошибка закрывает только это соединение, остальные обслуживаются дальше
+            LOG.log(System.Logger.Level.WARNING, "Соединение закрыто из-за непредвиденной ошибки", ex);
+            session.channel.close();
+        }
+    }
+
+    /**
+     * Соединение с клиентом и его решатель
+     */
+    private static final class Session {
+
+        Session(SocketChannel channel, ExpressionSolver expressionSolver) {
+            this.channel = channel;
+            this.expressionSolver = expressionSolver;
+        }
+
+        /**
+         * Читает доступные байты и вычисляет все законченные строки
+         * @throws IOException Выбрасывается при ошибке чтения или слишком длинной строке
+         */
+        void read() throws IOException {
+            if (!input.hasRemaining()) {
+                if (input.capacity() >= MAX_LINE_LENGTH)
+                    throw new IOException("Строка длиннее " + MAX_LINE_LENGTH + " байт");
+                input = ByteBuffer.allocate(Math.min(input.capacity() * 2, MAX_LINE_LENGTH)).put(input.flip());
+            }
+            endOfInput = channel.read(input) < 0;
+
+            byte[] array = input.array();
+            int start = 0;
+            int limit = input.position();
+            for (int i = scanned; i < limit; i++) {
+                if (array[i] == '\n') {
+                    evaluate(array, start, i);
+                    start = i + 1;
+                }
+            }
+            if (endOfInput && start < limit) {
+                evaluate(array, start, limit);
+                start = limit;
+            }
+            input.flip().position(start);
+            input.compact();
+            scanned = limit - start;
+            flushResponses();
+        }
+
+        private void evaluate(byte[] array, int start, int end) {
+            if (end > start && array[end - 1] == '\r')
+                end--;
+            String line = new String(array, start, end - start, StandardCharsets.UTF_8);
+            if (line.isBlank()) {
+                responses.append('\n');
+                return;
+            }
+            try {
+                double value = expressionSolver.evaluate(line);
+                responses.append("OK ").append(value);
+            } catch (ExpressionException ex) {
+                error(ex.getReason(), ex.getMessage());
+            } catch (RuntimeException | StackOverflowError ex) {
+                //ошибка в функции пользователя или слишком глубокое выражение
+                error(Reason.OTHER, ex.toString());
+            }
+            responses.append('\n');
+        }
+
+        private void error(Reason reason, String message) {
+            responses.append("ERR ").append(reason).append(' ');
+            for (int i = 0; i < message.length(); i++) {
+                char c = message.charAt(i);
+                responses.append(c == '\n' || c == '\r' ? ' ' : c);
+            }
+        }
+
+        /**
+         * Переносит накопленные ответы в буфер отправки
+         */
+        private void flushResponses() {
+            if (responses.length() == 0)
+                return;
+            byte[] bytes = responses.toString().getBytes(StandardCharsets.UTF_8);
+            responses.setLength(0);
+            if (output.remaining() < bytes.length) {
+                int capacity = output.capacity();
+                while (capacity - output.position() < bytes.length)
+                    capacity *= 2;
+                output = ByteBuffer.allocate(capacity).put(output.flip());
+            }
+            output.put(bytes);
+        }
+
+        void write() throws IOException {
+            output.flip();
+            channel.write(output);
+            output.compact();
+        }
+
+        boolean hasOutput() {
+            return output.position() > 0;
+        }
+
+        /**
+         * Клиент закончил отправку, и все ответы отправлены
+         */
+        boolean isFinished() {
+            return endOfInput && !hasOutput();
+        }
+
+        int interestOps() {
+            int ops = 0;
+            if (!endOfInput && output.position() < MAX_PENDING_OUTPUT)
+                ops |= SelectionKey.OP_READ;
+            if (hasOutput())
+                ops |= SelectionKey.OP_WRITE;
+            return ops;
+        }
+
+        final SocketChannel channel;
+        private final ExpressionSolver expressionSolver;
+
+        /**
+         * Прочитанные байты; в начале буфера - незаконченная строка
+         */
+        private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * Количество байт в начале буфера чтения, уже просмотренных без перевода строки;
+         * следующее чтение ищет конец строки только в новых байтах
+         */
+        private int scanned;
+
+        /**
+         * Ответы, ожидающие отправки, в режиме записи
+         */
+        private ByteBuffer output = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /**
+         * Ответы на строки текущего чтения
+         */
+        private final StringBuilder responses = new StringBuilder();
+
+        private boolean endOfInput;
+    }
+
+    private final Supplier<ExpressionSolver> sessions;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+
+    /**
+     * Поток обслуживания соединений; null, пока сервер не запущен
+     */
+    private Thread thread;
+
+    private volatile boolean running = true;
+}
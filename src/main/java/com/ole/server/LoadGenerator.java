@@ -0,0 +1,191 @@
+package com.ole.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Нагрузочный клиент для {@link EvaluationServer}.
+ * Открывает несколько соединений, в каждом отправляет заданное количество выражений, держа в полёте
+ * не больше заданного количества запросов без ответа, и измеряет пропускную способность и задержки ответов.
+ */
+public final class LoadGenerator {
+
+    /**
+     * Результаты нагрузки
+     * @param requests Количество отправленных выражений
+     * @param errors Количество ответов с ошибкой
+     * @param elapsedNanos Общая длительность в наносекундах
+     * @param p50Nanos Медиана задержки ответа
+     * @param p99Nanos 99-й процентиль задержки ответа
+     * @param maxNanos Наибольшая задержка ответа
+     */
+    public record Report(long requests, long errors, long elapsedNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+
+        /**
+         * Возвращает пропускную способность
+         * @return Выражений в секунду
+         */
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : requests * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("выражений: %d, ошибок: %d, время: %.3f с, выражений в секунду: %.0f, "
+                            + "задержка p50: %.1f мкс, p99: %.1f мкс, максимум: %.1f мкс",
+                    requests, errors, elapsedNanos / 1e9, throughput(), p50Nanos / 1e3, p99Nanos / 1e3, maxNanos / 1e3);
+        }
+    }
+
+    private static final String DEFAULT_EXPRESSION = "x = 2 * (3 + 4) ^ 2 / sin(1.5) - log(10)";
+
+    /**
+     * Запускает нагрузку на сервер на localhost.
+     * Аргументы: порт, количество соединений, количество выражений на соединение, наибольшее количество запросов без ответа.
+     * Без аргументов запускает сервер в этом же процессе на свободном порту.
+     */
+    public static void main(String[] args) {
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+        try {
+            if (args.length > 0) {
+                InetSocketAddress address = new InetSocketAddress("localhost", Integer.parseInt(args[0]));
+                System.out.println(run(address, connections, requests, depth, DEFAULT_EXPRESSION));
+                return;
+            }
+            try (EvaluationServer server = new EvaluationServer(new InetSocketAddress("localhost", 0), EvaluationServer::newSolver)) {
+                server.start();
+                InetSocketAddress address = new InetSocketAddress("localhost", server.getPort());
+                System.out.println(run(address, connections, requests, depth, DEFAULT_EXPRESSION));
+            }
+        } catch (IOException ex) {
+            System.out.println("Ошибка ввода-вывода: " + ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Нагружает сервер и ждёт всех ответов
+     * @param address Адрес сервера
+     * @param connections Количество соединений, каждое обслуживается своим потоком
+     * @param requests Количество выражений на соединение
+     * @param depth Наибольшее количество запросов без ответа в одном соединении
+     * @param expression Отправляемое выражение
+     * @return Результаты нагрузки
+     * @throws IOException Выбрасывается при ошибке соединения
+     * @throws InterruptedException Выбрасывается, если поток прерван во время ожидания
+     */
+    public static Report run(InetSocketAddress address, int connections, int requests, int depth, String expression)
+            throws IOException, InterruptedException {
+        if (connections < 1 || requests < 1 || depth < 1)
+            throw new IllegalArgumentException("Количество соединений, выражений и запросов без ответа должно быть положительным");
+        if (expression.indexOf('\n') >= 0 || expression.indexOf('\r') >= 0)
+            throw new IllegalArgumentException("Выражение не должно содержать перевод строки");
+        byte[] line = (expression + "\n").getBytes(StandardCharsets.UTF_8);
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        try {
+            List<Future<Connection>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < connections; i++)
+                futures.add(executor.submit(() -> new Connection(requests).run(address, line, depth)));
+            long[] latencies = new long[connections * requests];
+            long errors = 0;
+            for (int i = 0; i < connections; i++) {
+                Connection connection = get(futures.get(i));
+                System.arraycopy(connection.latencies, 0, latencies, i * requests, requests);
+                errors += connection.errors;
+            }
+            long elapsed = System.nanoTime() - start;
+            Arrays.sort(latencies);
+            return new Report(latencies.length, errors, elapsed,
+                    percentile(latencies, 0.5), percentile(latencies, 0.99), latencies[latencies.length - 1]);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Connection get(Future<Connection> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException io)
+                throw io;
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[(int) Math.max(0, Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    /**
+     * Одно соединение: запросы отправляются пачками до заполнения окна, ответы сопоставляются с запросами по порядку
+     */
+    private static final class Connection {
+
+        Connection(int requests) {
+            this.sent = new long[requests];
+            this.latencies = new long[requests];
+        }
+
+        Connection run(InetSocketAddress address, byte[] line, int depth) throws IOException {
+            int requests = sent.length;
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                ByteBuffer out = ByteBuffer.allocate(line.length * Math.min(depth, requests));
+                ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+                int next = 0;
+                int done = 0;
+                //начало ещё не полученного ответа
+                boolean lineStart = true;
+                while (done < requests) {
+                    out.clear();
+                    long now = System.nanoTime();
+                    while (next < requests && next - done < depth) {
+                        out.put(line);
+                        sent[next++] = now;
+                    }
+                    out.flip();
+                    while (out.hasRemaining())
+                        channel.write(out);
+
+                    in.clear();
+                    if (channel.read(in) < 0)
+                        throw new IOException("Сервер закрыл соединение");
+                    now = System.nanoTime();
+                    for (int i = 0; i < in.position(); i++) {
+                        byte b = in.get(i);
+                        if (lineStart && b != 'O')
+                            errors++;
+                        lineStart = b == '\n';
+                        if (lineStart) {
+                            latencies[done] = now - sent[done];
+                            done++;
+                        }
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Время отправки каждого запроса
+         */
+        private final long[] sent;
+        private final long[] latencies;
+        private long errors;
+    }
+
+    private LoadGenerator() {
+    }
+}
@@ -0,0 +1,55 @@
+package com.ole;
+
+import com.ole.expression.ExpressionSolver;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class StreamingProgramTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Построчное вычисление файла")
+    void processLines() throws Exception {
+        Path input = directory.resolve("input.txt");
+        Path output = directory.resolve("output.txt");
+        Files.writeString(input, "a = 2 * 3\r\n\na + 1\n1 / 0\nb\nround(PI)", StandardCharsets.UTF_8);
+
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setFunction("round", Program::round);
+        Assertions.assertEquals(6, StreamingProgram.process(input, output, expressionSolver));
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        Assertions.assertEquals(List.of("6.0", "", "7.0", "деление на ноль", "неизвестный токен b", "3.0"), lines);
+        Assertions.assertEquals(6, expressionSolver.evaluate("a"));
+    }
+
+    @Test
+    @DisplayName("Строки длиннее буфера и большое количество строк")
+    void longLinesAndManyLines() throws Exception {
+        Path input = directory.resolve("input.txt");
+        Path output = directory.resolve("output.txt");
+        StringBuilder text = new StringBuilder();
+        text.append(" ".repeat(200_000)).append("2 * 21\n");
+        for (int i = 0; i < 50_000; i++)
+            text.append("x = ").append(i).append(" + 0.5\n");
+        Files.writeString(input, text, StandardCharsets.UTF_8);
+
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        Assertions.assertEquals(50_001, StreamingProgram.process(input, output, expressionSolver));
+
+        List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+        Assertions.assertEquals(50_001, lines.size());
+        Assertions.assertEquals("42.0", lines.get(0));
+        Assertions.assertEquals("49999.5", lines.get(50_000));
+        Assertions.assertEquals(49_999.5, expressionSolver.evaluate("x"));
+    }
+}
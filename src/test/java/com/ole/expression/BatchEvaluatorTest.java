@@ -0,0 +1,84 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.DoubleBuffer;
+
+class BatchEvaluatorTest {
+
+    @Test
+    @DisplayName("Тест совпадения пакетного и построчного вычисления")
+    void sameResults() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setFunction("triple", (a) -> a * 3);
+        expressionSolver.setVariable("k", 2.5);
+        CompiledExpression expression = expressionSolver.compile("-x * k + triple(y) / (x + 1) ^ 2 - sin(PI / x)");
+
+        int rows = 3000;
+        double[] xs = new double[rows];
+        DoubleBuffer ys = DoubleBuffer.allocate(rows);
+        for (int i = 0; i < rows; i++) {
+            xs[i] = i * 0.37 + 0.5;
+            ys.put(i, Math.cos(i));
+        }
+        double[] output = new double[rows];
+        BatchResult result = expression.evaluateBatch(new BatchInput().bind("x", xs).bind("y", ys), output);
+
+        Assertions.assertFalse(result.hasErrors());
+        Assertions.assertEquals(rows, result.getRows());
+        for (int i = 0; i < rows; i++) {
+            expressionSolver.setVariable("x", xs[i]);
+            expressionSolver.setVariable("y", ys.get(i));
+            Assertions.assertEquals(expression.evaluate(), output[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("Тест ошибок по номерам строк")
+    void rowErrors() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        CompiledExpression expression = expressionSolver.compile("log(a) + (a - 5) ^ 2 / b");
+        double[] a = {6, 6, 1, 0 - 1, 7};
+        double[] b = {1, 0, 1, 1, 2};
+        double[] output = new double[a.length];
+
+        BatchResult result = expression.evaluateBatch(new BatchInput().bind("a", a).bind("b", b), output);
+
+        Assertions.assertEquals(3, result.getErrors().size());
+        Assertions.assertEquals(new BatchResult.RowError(1, Reason.DIVISION_BY_ZERO, "деление на ноль"), result.getErrors().get(0));
+        Assertions.assertEquals(new BatchResult.RowError(2, Reason.NEGATIVE_BASE, "возведение отрицательного числа в степень"),
+                result.getErrors().get(1));
+        Assertions.assertEquals(new BatchResult.RowError(3, Reason.NEGATIVE_BASE, "возведение отрицательного числа в степень"),
+                result.getErrors().get(2));
+        //причина и сообщение совпадают с исключением обычного вычисления той же строки
+        for (BatchResult.RowError error : result.getErrors()) {
+            expressionSolver.setVariable("a", a[error.row()]);
+            expressionSolver.setVariable("b", b[error.row()]);
+            ExpressionException ex = Assertions.assertThrows(ExpressionException.class, expression::evaluate);
+            Assertions.assertEquals(ex.getReason(), error.reason());
+            Assertions.assertEquals(ex.getMessage(), error.message());
+        }
+        Assertions.assertEquals(Math.log(6) + 1, output[0]);
+        Assertions.assertTrue(Double.isNaN(output[1]));
+        Assertions.assertEquals(Math.log(7) + 2, output[4]);
+    }
+
+    @Test
+    @DisplayName("Тест переменных, не привязанных к столбцам")
+    void unboundVariables() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        CompiledExpression expression = expressionSolver.compile("x + c");
+        BatchInput input = new BatchInput().bind("x", new double[]{1, 2});
+        Assertions.assertThrows(ExpressionException.class, () -> expression.evaluateBatch(input, new double[2]));
+
+        expressionSolver.setVariable("c", 10.0);
+        double[] output = new double[2];
+        expression.evaluateBatch(input, output);
+        Assertions.assertArrayEquals(new double[]{11, 12}, output);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> expression.evaluateBatch(input, new double[3]));
+    }
+}
@@ -0,0 +1,106 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+class CompiledExpressionTest {
+
+    @Test
+    @DisplayName("Тест многократного вычисления скомпилированного выражения")
+    void evaluate() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setVariable("x", 1.0);
+        CompiledExpression expression = expressionSolver.compile("5^2.1 + x/3 *(7/sin(PI/3))");
+        for (int i = 1; i <= 10; i++) {
+            expressionSolver.setVariable("x", (double) i);
+            Assertions.assertEquals(Math.pow(5, 2.1) + i / 3.0 * (7 / Math.sin(Math.PI / 3)), expression.evaluate());
+        }
+    }
+
+    @Test
+    @DisplayName("Тест присваивания в скомпилированном выражении")
+    void assignment() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        CompiledExpression expression = expressionSolver.compile("var1 = 13 + 5");
+        Assertions.assertEquals("var1", expression.getTarget());
+        Assertions.assertEquals(18.0, expression.evaluate());
+        Assertions.assertEquals(18.0, expressionSolver.evaluate("var1"));
+    }
+
+    @Test
+    @DisplayName("Тест ошибок при компиляции и вычислении")
+    void errors() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.compile("(5 + 3"));
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.compile("5 + * 3"));
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.compile("a = b = 3"));
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.compile("sin = 3"));
+
+        CompiledExpression division = expressionSolver.compile("1 / y");
+        Assertions.assertThrows(ExpressionException.class, division::evaluate);
+        expressionSolver.setVariable("y", 0.0);
+        Assertions.assertThrows(ExpressionException.class, division::evaluate);
+        expressionSolver.setVariable("y", 4.0);
+        Assertions.assertEquals(0.25, division.evaluate());
+
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.compile("(0 - 2) ^ 2").evaluate());
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.compile("log(0 - 1)").evaluate());
+    }
+
+    @Test
+    @DisplayName("Тест отсутствия выделения памяти при вычислении")
+    void allocationFree() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setVariable("x", 0.5);
+        CompiledExpression expression = expressionSolver.compile("y = 5^2.1 + x/3 *(7/sin(PI/3)) - log(x + 1)");
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        double sum = 0;
+        for (int i = 0; i < 100_000; i++)
+            sum += expression.evaluate();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100_000; i++)
+            sum += expression.evaluate();
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        Assertions.assertTrue(sum > 0);
+        Assertions.assertTrue(allocated < 1024, "выделено байт: " + allocated);
+    }
+
+    @Test
+    @DisplayName("Тест вложенного вычисления из пользовательской функции")
+    void nestedEvaluate() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setVariable("y", 5.0);
+        CompiledExpression inner = expressionSolver.compile("y * 2 + 1");
+        expressionSolver.setFunction("f", a -> {
+            try {
+                return inner.evaluate();
+            } catch (ExpressionException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        Assertions.assertEquals(111.0, expressionSolver.evaluate("100 + f(1)"));
+        Assertions.assertEquals(111.0, expressionSolver.compile("100 + f(1)").evaluate());
+    }
+
+    @Test
+    @DisplayName("Тест вычисления очень длинного выражения")
+    void deepExpression() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setVariable("x", 0.5);
+        expressionSolver.setVariable("y", 4.0);
+        CompiledExpression expression = expressionSolver.compile("x * y" + " + x * y".repeat(99_999));
+        Assertions.assertEquals(1, expression.program().temporaries);
+        Assertions.assertEquals(200_000.0, expression.evaluate());
+
+        double[] output = new double[2];
+        expression.evaluateBatch(new BatchInput().bind("x", new double[]{0.25, 1.0}), output);
+        Assertions.assertArrayEquals(new double[]{100_000.0, 400_000.0}, output);
+    }
+}
@@ -0,0 +1,147 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+class CompiledStoreTest {
+
+    private static ExpressionSolver solver() {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setFunction("triple", (a) -> a * 3);
+        solver.setFunction("max", Math::max);
+        solver.setFunction("sum3", 3, (arguments) -> arguments[0] + arguments[1] + arguments[2]);
+        return solver;
+    }
+
+    private static final String[] EXPRESSIONS = {
+            "(x + 1) * (x + 1) - sin(x + 1) / PI",
+            "y = triple(x) + max(x, 2) * sum3(x, -x, 4)",
+            "x ^ 2 + log10(x + E) - unset"
+    };
+
+    private static Path save(ExpressionSolver solver, Path directory) throws IOException, ExpressionException {
+        List<CompiledExpression> expressions = new ArrayList<>();
+        for (String expression : EXPRESSIONS)
+            expressions.add(solver.compile(expression));
+        Path file = directory.resolve("expressions.bin");
+        solver.saveCompiled(file, expressions);
+        return file;
+    }
+
+    @Test
+    @DisplayName("Тест загрузки сохранённых выражений и переменных")
+    void roundTrip(@TempDir Path directory) throws IOException, ExpressionException {
+        ExpressionSolver original = solver();
+        original.setVariable("x", 1.5);
+        original.setVariable("unset", 0.25);
+        Path file = save(original, directory);
+
+        ExpressionSolver restored = solver();
+        List<CompiledExpression> loaded = restored.loadCompiled(file);
+
+        Assertions.assertEquals(EXPRESSIONS.length, loaded.size());
+        Assertions.assertEquals(1.5, restored.evaluate("x"));
+        for (int i = 0; i < EXPRESSIONS.length; i++) {
+            CompiledExpression expected = original.compile(EXPRESSIONS[i]);
+            Assertions.assertEquals(EXPRESSIONS[i], loaded.get(i).getSource());
+            Assertions.assertEquals(expected.getTarget(), loaded.get(i).getTarget());
+            Assertions.assertEquals(expected.evaluate(), loaded.get(i).evaluate());
+            //повторяющиеся подвыражения остаются общими
+            Assertions.assertEquals(expected.program().temporaries, loaded.get(i).program().temporaries);
+        }
+        Assertions.assertEquals(original.evaluate("y"), restored.evaluate("y"));
+        //загруженное выражение берётся из кэша без разбора
+        long misses = restored.getCacheStats().misses();
+        Assertions.assertEquals(original.evaluate(EXPRESSIONS[0]), restored.evaluate(EXPRESSIONS[0]));
+        Assertions.assertEquals(misses, restored.getCacheStats().misses());
+    }
+
+    @Test
+    @DisplayName("Тест отказа загружать файл с незарегистрированной функцией")
+    void unregisteredFunction(@TempDir Path directory) throws IOException, ExpressionException {
+        Path file = save(solver(), directory);
+        ExpressionSolver restored = new ExpressionSolver();
+        restored.setFunction("triple", (a) -> a * 3);
+        restored.setFunction("max", Math::max);
+
+        ExpressionException ex = Assertions.assertThrows(ExpressionException.class, () -> restored.loadCompiled(file));
+        Assertions.assertEquals(Reason.INVALID_STORE, ex.getReason());
+        Assertions.assertEquals("Функция не зарегистрирована в решателе: sum3", ex.getMessage());
+
+        restored.setFunction("sum3", 2, (arguments) -> arguments[0] + arguments[1]);
+        Assertions.assertThrows(ExpressionException.class, () -> restored.loadCompiled(file));
+    }
+
+    @Test
+    @DisplayName("Тест отказа загружать файл, если свёрнутая встроенная функция переопределена")
+    void redefinedFoldedFunction(@TempDir Path directory) throws IOException, ExpressionException {
+        ExpressionSolver original = new ExpressionSolver();
+        CompiledExpression expression = original.compile("sin(0) + 1");
+        Path file = directory.resolve("folded.bin");
+        original.saveCompiled(file, List.of(expression));
+
+        ExpressionSolver redefined = new ExpressionSolver();
+        redefined.setFunction("sin", (a) -> a + 100);
+        ExpressionException ex = Assertions.assertThrows(ExpressionException.class, () -> redefined.loadCompiled(file));
+        Assertions.assertEquals(Reason.INVALID_STORE, ex.getReason());
+        Assertions.assertEquals("Функция sin при сохранении была встроенной функцией Math.sin и переопределена в решателе",
+                ex.getMessage());
+        Assertions.assertEquals(101.0, redefined.evaluate("sin(0) + 1"));
+
+        //загруженное выражение сохраняется повторно вместе с функциями исходной строки
+        ExpressionSolver restored = new ExpressionSolver();
+        Path copy = directory.resolve("copy.bin");
+        restored.saveCompiled(copy, restored.loadCompiled(file));
+        Assertions.assertThrows(ExpressionException.class, () -> redefined.loadCompiled(copy));
+        Assertions.assertEquals(1.0, new ExpressionSolver().loadCompiled(copy).get(0).evaluate());
+    }
+
+    @Test
+    @DisplayName("Тест проверки заголовка и контрольной суммы")
+    void validation(@TempDir Path directory) throws IOException, ExpressionException {
+        Path file = save(solver(), directory);
+        byte[] bytes = Files.readAllBytes(file);
+
+        byte[] corrupted = bytes.clone();
+        corrupted[corrupted.length - 3] ^= 1;
+        Files.write(file, corrupted);
+        Assertions.assertEquals("Файл скомпилированных выражений повреждён",
+                Assertions.assertThrows(ExpressionException.class, () -> solver().loadCompiled(file)).getMessage());
+
+        byte[] version = bytes.clone();
+        version[5] = 1;
+        Files.write(file, version);
+        Assertions.assertEquals("Неподдерживаемая версия формата файла: 1",
+                Assertions.assertThrows(ExpressionException.class, () -> solver().loadCompiled(file)).getMessage());
+
+        Files.write(file, new byte[]{1, 2, 3});
+        Assertions.assertThrows(ExpressionException.class, () -> solver().loadCompiled(file));
+        Files.writeString(file, "x + 1 and some other text");
+        Assertions.assertEquals(Reason.INVALID_STORE,
+                Assertions.assertThrows(ExpressionException.class, () -> solver().loadCompiled(file)).getReason());
+    }
+
+    @Test
+    @DisplayName("Тест сохранения очень длинного выражения")
+    void longExpression(@TempDir Path directory) throws IOException, ExpressionException {
+        ExpressionSolver original = solver();
+        original.setVariable("x", 2.0);
+        CompiledExpression expression = original.compile("triple(x)" + " + triple(x) - x".repeat(50_000));
+        Path file = directory.resolve("long.bin");
+        original.saveCompiled(file, List.of(expression));
+
+        CompiledExpression loaded = solver().loadCompiled(file).get(0);
+        Assertions.assertEquals(expression.evaluate(), loaded.evaluate());
+        Assertions.assertEquals(expression.program().temporaries, loaded.program().temporaries);
+    }
+}
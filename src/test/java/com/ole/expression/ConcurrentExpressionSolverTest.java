@@ -0,0 +1,100 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+class ConcurrentExpressionSolverTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20_000;
+
+    @Test
+    @DisplayName("Нагрузочный тест присваиваний из многих потоков")
+    void concurrentAssignments() throws Exception {
+        ConcurrentExpressionSolver expressionSolver = new ConcurrentExpressionSolver();
+        expressionSolver.setJitThreshold(1000);
+        for (int t = 0; t < THREADS; t++)
+            expressionSolver.setVariable("counter" + t, 0.0);
+
+        runInThreads(t -> {
+            //у каждого потока свой счётчик, поэтому чтение и запись не пересекаются с другими потоками
+            CompiledExpression increment = expressionSolver.compile("counter" + t + " = counter" + t + " + 1");
+            for (int i = 0; i < ITERATIONS; i++) {
+                increment.evaluate();
+                //одновременно создаются новые переменные, и хранилище растёт
+                if (i % 2 == 0)
+                    expressionSolver.evaluate("t" + t + "v" + i + " = " + i + " * 2");
+            }
+        });
+
+        for (int t = 0; t < THREADS; t++) {
+            Assertions.assertEquals(ITERATIONS, expressionSolver.evaluate("counter" + t));
+            for (int i = 0; i < ITERATIONS; i += 2)
+                Assertions.assertEquals(i * 2.0, expressionSolver.evaluate("t" + t + "v" + i));
+        }
+        Assertions.assertEquals(THREADS + THREADS * ITERATIONS / 2, expressionSolver.getVariables().length);
+    }
+
+    @Test
+    @DisplayName("Нагрузочный тест чтения во время записи")
+    void readersDuringWrites() throws Exception {
+        ConcurrentExpressionSolver expressionSolver = new ConcurrentExpressionSolver();
+        expressionSolver.setVariable("shared", 0.0);
+        CompiledExpression read = expressionSolver.compile("shared * 2 + sin(0)");
+
+        runInThreads(t -> {
+            if (t == 0) {
+                for (int i = 1; i <= ITERATIONS; i++)
+                    expressionSolver.setVariable("shared", (double) i);
+            }
+            else if (t == 1) {
+                for (int i = 0; i < 200; i++)
+                    Assertions.assertTrue(expressionSolver.setFunction("f" + i, (a) -> a + 1));
+            }
+            else {
+                double previous = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    double value = read.evaluate();
+                    //значение записывается атомарно и не убывает, поэтому читатель видит только целые удвоенные значения
+                    Assertions.assertEquals(0, value % 2);
+                    Assertions.assertTrue(value >= previous);
+                    previous = value;
+                }
+            }
+        });
+
+        Assertions.assertEquals(ITERATIONS * 2.0, read.evaluate());
+        Assertions.assertEquals(200 + 5, expressionSolver.getFunctions().length);
+        Assertions.assertEquals(ITERATIONS + 1, expressionSolver.evaluate("f199(shared)"));
+    }
+
+    private interface Task {
+        void run(int thread) throws ExpressionException;
+    }
+
+    private static void runInThreads(Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(thread);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
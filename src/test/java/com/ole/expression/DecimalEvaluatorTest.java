@@ -0,0 +1,102 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.List;
+
+class DecimalEvaluatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Тест точной десятичной арифметики")
+    void exactArithmetic() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("price", 19.99);
+        solver.setVariable("rate", 0.07);
+        //константы не свёрнуты в double
+        CompiledExpression sum = solver.compile("0.1 + 0.2");
+        Assertions.assertEquals(0.30000000000000004, sum.evaluate());
+        Assertions.assertEquals(new BigDecimal("0.3"), sum.evaluateDecimal(MathContext.UNLIMITED));
+
+        CompiledExpression total = solver.compile("price * 3 * (1 + rate)");
+        Assertions.assertEquals(new BigDecimal("64.1679"), total.evaluateDecimal(MathContext.UNLIMITED));
+        Assertions.assertEquals(new BigDecimal("64.17"), total.evaluateDecimal(new MathContext(4, RoundingMode.HALF_EVEN)));
+        Assertions.assertEquals(new BigDecimal("0.125"), solver.compile("2 ^ (-3)").evaluateDecimal(MathContext.UNLIMITED));
+        Assertions.assertEquals(new BigDecimal("0." + "3".repeat(34)), solver.compile("1 / 3").evaluateDecimal(MathContext.DECIMAL128));
+        Assertions.assertEquals(new BigDecimal("2.5"), solver.compile("cos(0) * 2.5").evaluateDecimal(MathContext.UNLIMITED));
+    }
+
+    @Test
+    @DisplayName("Тест ошибок десятичного вычисления")
+    void errors() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("zero", 0.0);
+        solver.setVariable("infinity", Double.POSITIVE_INFINITY);
+        assertReason(Reason.INEXACT, solver.compile("1 / 3"));
+        assertReason(Reason.INEXACT, solver.compile("3 ^ (-1)"));
+        assertReason(Reason.DIVISION_BY_ZERO, solver.compile("1 / zero"));
+        assertReason(Reason.DIVISION_BY_ZERO, solver.compile("zero ^ (-2)"));
+        assertReason(Reason.NEGATIVE_BASE, solver.compile("(zero - 2) ^ 0.5"));
+        assertReason(Reason.NOT_A_NUMBER, solver.compile("infinity + 1"));
+        assertReason(Reason.NOT_A_NUMBER, solver.compile("log(zero - 1)"));
+        Assertions.assertThrows(NullPointerException.class, () -> solver.compile("1").evaluateDecimal(null));
+    }
+
+    @Test
+    @DisplayName("Тест ограничения размера точной степени")
+    void hugePowers() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("n", 999_999_999.0);
+        solver.setVariable("big", 1e300);
+        assertReason(Reason.OVERFLOW, solver.compile("2 ^ n"));
+        assertReason(Reason.OVERFLOW, solver.compile("1.5 ^ (-n)"));
+        Assertions.assertEquals(BigDecimal.ONE, solver.compile("1 ^ n").evaluateDecimal(MathContext.UNLIMITED));
+        Assertions.assertEquals(new BigDecimal("1E-999999999"), solver.compile("0.1 ^ n").evaluateDecimal(MathContext.UNLIMITED));
+        Assertions.assertEquals(0, BigDecimal.valueOf(2).pow(1000).compareTo(solver.compile("2 ^ 1000").evaluateDecimal(MathContext.UNLIMITED)));
+        //с ограниченной точностью степень вычисляется быстро, а переполнение порядка тоже является ошибкой
+        BigDecimal rounded = solver.compile("2 ^ n").evaluateDecimal(MathContext.DECIMAL64);
+        Assertions.assertEquals(16, rounded.precision());
+        ExpressionException ex = Assertions.assertThrows(ExpressionException.class,
+                () -> solver.compile("big ^ n").evaluateDecimal(MathContext.DECIMAL64));
+        Assertions.assertEquals(Reason.OVERFLOW, ex.getReason());
+    }
+
+    @Test
+    @DisplayName("Тест десятичного вычисления выражений, загруженных из файла")
+    void loadedExpressions() throws Exception {
+        ExpressionSolver solver = new ExpressionSolver();
+        Path file = directory.resolve("expressions.bin");
+        solver.saveCompiled(file, List.of(solver.compile("x = 0.1 * 3 - 0.3")));
+
+        ExpressionSolver loaded = new ExpressionSolver();
+        CompiledExpression expression = loaded.loadCompiled(file).get(0);
+        Assertions.assertEquals(0.1 * 3 - 0.3, expression.evaluate());
+        Assertions.assertEquals(0, BigDecimal.ZERO.compareTo(expression.evaluateDecimal(MathContext.UNLIMITED)));
+    }
+
+    @Test
+    @DisplayName("Тест десятичного вычисления очень длинного выражения")
+    void longExpression() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("price", 0.1);
+        CompiledExpression expression = solver.compile("price" + " + price".repeat(99_999));
+        Assertions.assertEquals(new BigDecimal("10000.0"), expression.evaluateDecimal(MathContext.UNLIMITED));
+    }
+
+    private static void assertReason(Reason reason, CompiledExpression expression) {
+        ExpressionException ex = Assertions.assertThrows(ExpressionException.class,
+                () -> expression.evaluateDecimal(MathContext.UNLIMITED), expression.getSource());
+        Assertions.assertEquals(reason, ex.getReason(), expression.getSource());
+    }
+}
@@ -0,0 +1,125 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+class DependencyTrackerTest {
+
+    @Test
+    @DisplayName("Пересчёт только зависящих формул в порядке зависимостей")
+    void recomputeAffectedFormulas() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setReactive(true);
+        List<String> changes = new ArrayList<>();
+        expressionSolver.addListener((name, value) -> changes.add(name + "=" + value));
+
+        expressionSolver.setVariable("x", 1.0);
+        expressionSolver.setVariable("y", 10.0);
+        expressionSolver.evaluate("a = x * 2");
+        expressionSolver.evaluate("c = a + 1");
+        expressionSolver.evaluate("d = c + a");
+        expressionSolver.evaluate("b = y + 1");
+        changes.clear();
+
+        expressionSolver.setVariable("x", 5.0);
+        Assertions.assertEquals(List.of("x=5.0", "a=10.0", "c=11.0", "d=21.0"), changes);
+        Assertions.assertEquals(21, expressionSolver.evaluate("d"));
+        Assertions.assertEquals(11, expressionSolver.evaluate("b"));
+
+        //новая формула переменной тоже пересчитывает зависящие от неё
+        changes.clear();
+        expressionSolver.evaluate("a = x");
+        Assertions.assertEquals(List.of("a=5.0", "c=6.0", "d=11.0"), changes);
+
+        //прямое присваивание заменяет формулу
+        expressionSolver.setVariable("a", 0.0);
+        changes.clear();
+        expressionSolver.setVariable("x", 7.0);
+        Assertions.assertEquals(List.of("x=7.0"), changes);
+        Assertions.assertEquals(1, expressionSolver.evaluate("c"));
+    }
+
+    @Test
+    @DisplayName("Присваивания сценария и скомпилированного выражения тоже становятся формулами")
+    void scriptsAndCompiledAssignments() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setReactive(true);
+        List<String> changes = new ArrayList<>();
+        expressionSolver.addListener((name, value) -> changes.add(name + "=" + value));
+        expressionSolver.evaluate("a = 1");
+        expressionSolver.evaluate("b = a * 10");
+        changes.clear();
+
+        expressionSolver.evaluateScript(List.of("c = a + 1", "a = 5"));
+        Assertions.assertEquals(List.of("a=5.0", "b=50.0", "c=6.0"), changes);
+        Assertions.assertEquals(50, expressionSolver.evaluate("b"));
+
+        CompiledExpression assignment = expressionSolver.compile("a = 7");
+        changes.clear();
+        Assertions.assertEquals(7, assignment.evaluate());
+        //b и c не зависят друг от друга, порядок их пересчёта не определён
+        Assertions.assertEquals("a=7.0", changes.get(0));
+        Assertions.assertEquals(Set.of("a=7.0", "b=70.0", "c=8.0"), Set.copyOf(changes));
+
+        //формула из сценария тоже пересчитывается, а цикл со сценарием отклоняется
+        expressionSolver.setVariable("a", 2.0);
+        Assertions.assertEquals(3, expressionSolver.evaluate("c"));
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluateScript(List.of("a = c * 2")));
+        Assertions.assertEquals(2, expressionSolver.evaluate("a"));
+    }
+
+    @Test
+    @DisplayName("Циклы формул отклоняются")
+    void rejectCycles() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setReactive(true);
+        expressionSolver.setVariable("a", 1.0);
+        expressionSolver.evaluate("b = a + 1");
+        expressionSolver.evaluate("c = b * 2");
+
+        var cycle = Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluate("a = c"));
+        Assertions.assertEquals("Циклическая зависимость переменных: a -> c -> b -> a", cycle.getMessage());
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluate("a = a + 1"));
+        Assertions.assertEquals(1, expressionSolver.evaluate("a"));
+
+        //переопределение формулы убирает прежние зависимости
+        expressionSolver.evaluate("b = 3");
+        expressionSolver.evaluate("a = c");
+        Assertions.assertEquals(6, expressionSolver.evaluate("a"));
+    }
+
+    @Test
+    @DisplayName("Ошибки пересчёта передаются слушателю")
+    void reportFailures() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setReactive(true);
+        List<String> failures = new ArrayList<>();
+        expressionSolver.addListener(new VariableListener() {
+            @Override
+            public void variableChanged(String name, double value) {
+            }
+
+            @Override
+            public void evaluationFailed(String name, ExpressionException error) {
+                failures.add(name + ": " + error.getMessage());
+            }
+        });
+        expressionSolver.setVariable("x", 2.0);
+        expressionSolver.evaluate("r = 1 / x");
+        expressionSolver.setVariable("x", 0.0);
+
+        Assertions.assertEquals(List.of("r: деление на ноль"), failures);
+        Assertions.assertEquals(0.5, expressionSolver.evaluate("r"));
+
+        //без реактивного режима формулы не пересчитываются
+        expressionSolver.setReactive(false);
+        expressionSolver.setVariable("x", 4.0);
+        Assertions.assertEquals(0.5, expressionSolver.evaluate("r"));
+    }
+}
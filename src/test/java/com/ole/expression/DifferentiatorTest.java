@@ -0,0 +1,96 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class DifferentiatorTest {
+
+    @Test
+    @DisplayName("Тест производных встроенных функций и операторов в обоих режимах")
+    void builtins() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("x", 0.7);
+        solver.setVariable("y", 2.5);
+        CompiledExpression expression = solver.compile("sin(x) * cos(y) + tan(x * y) - log(y) / x + log10(x + y) + x ^ y + (-x) / y");
+        double x = 0.7;
+        double y = 2.5;
+        double dx = Math.cos(x) * Math.cos(y) + y / Math.pow(Math.cos(x * y), 2) + Math.log(y) / (x * x)
+                + 1 / ((x + y) * Math.log(10)) + y * Math.pow(x, y - 1) - 1 / y;
+        double dy = -Math.sin(x) * Math.sin(y) + x / Math.pow(Math.cos(x * y), 2) - 1 / (y * x)
+                + 1 / ((x + y) * Math.log(10)) + Math.pow(x, y) * Math.log(x) + x / (y * y);
+
+        for (DifferentiationMode mode : DifferentiationMode.values()) {
+            Gradient gradient = expression.gradient(mode, "x", "y", "z");
+            Assertions.assertEquals(expression.evaluate(), gradient.getValue(), mode.name());
+            Assertions.assertEquals(dx, gradient.getPartial("x"), 1e-12, mode.name());
+            Assertions.assertEquals(dy, gradient.getPartial("y"), 1e-12, mode.name());
+            Assertions.assertEquals(0.0, gradient.getPartial("z"), mode.name());
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> expression.gradient("x", "x"));
+    }
+
+    @Test
+    @DisplayName("Тест производных пользовательских функций и общих подвыражений")
+    void userFunctions() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setFunction("square", (a) -> a * a, (a) -> 2 * a);
+        solver.setFunction("hypot", Math::hypot, (a, b) -> a / Math.hypot(a, b), (a, b) -> b / Math.hypot(a, b));
+        solver.setFunction("mul3", 3, (v) -> v[0] * v[1] * v[2],
+                new DoubleNaryOperator[]{(v) -> v[1] * v[2], (v) -> v[0] * v[2], (v) -> v[0] * v[1]});
+        solver.setFunction("opaque", (a) -> a + 1);
+        solver.setVariable("x", 3.0);
+        solver.setVariable("y", 4.0);
+        solver.setVariable("k", 2.0);
+        CompiledExpression expression = solver.compile("square(x + y) * (x + y) + hypot(x, y) + mul3(x, y, x) + opaque(k)");
+
+        double expected = 3 * 49 + 3.0 / 5 + 2 * 3 * 4;
+        for (DifferentiationMode mode : DifferentiationMode.values()) {
+            Gradient gradient = expression.gradient(mode, "x", "y");
+            Assertions.assertEquals(expression.evaluate(), gradient.getValue());
+            Assertions.assertEquals(expected, gradient.getPartial("x"), 1e-12, mode.name());
+            Assertions.assertArrayEquals(new double[]{expected, 3 * 49 + 4.0 / 5 + 9}, gradient.getPartials(), 1e-12);
+        }
+
+        //функция без производной допустима, пока её аргумент не зависит от выбранных переменных
+        ExpressionException ex = Assertions.assertThrows(ExpressionException.class, () -> expression.gradient("k"));
+        Assertions.assertEquals(Reason.NO_DERIVATIVE, ex.getReason());
+        Assertions.assertEquals("Для функции opaque не задана производная", ex.getMessage());
+        //функция с производной вычисляется и обычным способом, в том числе сгенерированным классом
+        solver.setJitThreshold(1);
+        Assertions.assertEquals(expression.evaluate(), solver.compile("square(x + y) * (x + y) + hypot(x, y) + mul3(x, y, x) + opaque(k)").evaluate());
+    }
+
+    @Test
+    @DisplayName("Тест ошибок и особых точек при дифференцировании")
+    void errors() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("x", 0.0);
+        Assertions.assertEquals(Reason.DIVISION_BY_ZERO,
+                Assertions.assertThrows(ExpressionException.class, () -> solver.compile("1 / x").gradient("x")).getReason());
+        Assertions.assertEquals(Reason.UNKNOWN_VARIABLE,
+                Assertions.assertThrows(ExpressionException.class, () -> solver.compile("x + unknown").gradient("x")).getReason());
+        //при нулевом основании производная по показателю равна нулю, а не NaN
+        solver.setVariable("p", 2.0);
+        for (DifferentiationMode mode : DifferentiationMode.values()) {
+            Gradient gradient = solver.compile("x ^ p").gradient(mode, "x", "p");
+            Assertions.assertArrayEquals(new double[]{0, 0}, gradient.getPartials());
+        }
+    }
+
+    @Test
+    @DisplayName("Тест производных очень длинного выражения")
+    void longExpression() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("x", 3.0);
+        solver.setVariable("y", 0.5);
+        CompiledExpression expression = solver.compile("x * y" + " + x * y + x".repeat(50_000));
+        for (DifferentiationMode mode : DifferentiationMode.values()) {
+            Gradient gradient = expression.gradient(mode, "x", "y");
+            Assertions.assertEquals(expression.evaluate(), gradient.getValue(), mode.name());
+            Assertions.assertArrayEquals(new double[]{50_000 + 50_001 * 0.5, 50_001 * 3.0}, gradient.getPartials(), mode.name());
+        }
+    }
+}
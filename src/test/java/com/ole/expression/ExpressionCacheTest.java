@@ -0,0 +1,81 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ExpressionCacheTest {
+
+    @Test
+    @DisplayName("Тест попаданий и вытеснения в кэше выражений")
+    void hitsAndEvictions() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setCacheCapacity(2);
+        expressionSolver.evaluate("1 + 1");
+        expressionSolver.evaluate("2 + 2");
+        expressionSolver.evaluate("1 + 1");
+        //вытесняет 2 + 2, которое использовалось давнее
+        expressionSolver.evaluate("3 + 3");
+        expressionSolver.evaluate("1 + 1");
+        expressionSolver.evaluate("2 + 2");
+
+        CacheStats stats = expressionSolver.getCacheStats();
+        Assertions.assertEquals(2, stats.hits());
+        Assertions.assertEquals(4, stats.misses());
+        Assertions.assertEquals(2, stats.evictions());
+        Assertions.assertEquals(2, stats.size());
+        Assertions.assertEquals(2, stats.capacity());
+    }
+
+    @Test
+    @DisplayName("Тест вытеснения пачкой давно использованных выражений")
+    void batchEviction() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setCacheCapacity(16);
+        for (int i = 0; i < 16; i++)
+            expressionSolver.evaluate(i + " + 1");
+        expressionSolver.evaluate("0 + 1");
+        //переполнение вытесняет лишнее выражение и ещё восьмую часть ёмкости: 1 + 1, 2 + 1 и 3 + 1
+        expressionSolver.evaluate("16 + 1");
+        CacheStats stats = expressionSolver.getCacheStats();
+        Assertions.assertEquals(3, stats.evictions());
+        Assertions.assertEquals(14, stats.size());
+
+        expressionSolver.evaluate("0 + 1");
+        expressionSolver.evaluate("4 + 1");
+        expressionSolver.evaluate("1 + 1");
+        stats = expressionSolver.getCacheStats();
+        Assertions.assertEquals(3, stats.hits());
+        Assertions.assertEquals(18, stats.misses());
+    }
+
+    @Test
+    @DisplayName("Тест очистки кэша при добавлении функции")
+    void invalidation() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        //имя ещё не является функцией, поэтому разбирается как переменная без значения; разобранное выражение попадает в кэш
+        ExpressionException before = Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluate("twice"));
+        Assertions.assertEquals("неизвестный токен twice", before.getMessage());
+        Assertions.assertEquals(1, expressionSolver.getCacheStats().size());
+
+        expressionSolver.setFunction("twice", (a) -> a * 2);
+        Assertions.assertEquals(0, expressionSolver.getCacheStats().size());
+        Assertions.assertEquals(1, expressionSolver.getCacheStats().invalidations());
+        //теперь имя разбирается как функция без аргумента
+        ExpressionException after = Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluate("twice"));
+        Assertions.assertEquals("Неправильное расположение операторов (позиция 1)", after.getMessage());
+        Assertions.assertEquals(8.0, expressionSolver.evaluate("twice(4)"));
+    }
+
+    @Test
+    @DisplayName("Тест отключения кэша")
+    void disabled() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setCacheCapacity(0);
+        expressionSolver.evaluate("1 + 1");
+        expressionSolver.evaluate("1 + 1");
+        Assertions.assertEquals(0, expressionSolver.getCacheStats().hits());
+        Assertions.assertEquals(0, expressionSolver.getCacheStats().size());
+    }
+}
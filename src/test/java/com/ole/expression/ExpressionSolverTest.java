@@ -34,4 +34,15 @@ class ExpressionSolverTest {
         expressionSolver.setVariable("var1", Math.tan(1.2));
         Assertions.assertEquals(expressionSolver.evaluate("var1"),Math.tan(1.2));
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Тест очень длинных выражений")
+    void longExpressions() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setVariable("x", 2.0);
+        String sum = "x" + "+x".repeat(99_999);
+        Assertions.assertEquals(200_000.0, expressionSolver.evaluate(sum));
+        Assertions.assertEquals(200_000.0, expressionSolver.evaluate(new StringBuilder(sum)));
+        Assertions.assertEquals(-1.0, expressionSolver.evaluate("1" + "-1".repeat(2) + "*sin(x)/sin(x)".repeat(50_000)));
+    }
+}
@@ -0,0 +1,63 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class FunctionRegistryTest {
+
+    private static ExpressionSolver solver(int jitThreshold) {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setJitThreshold(jitThreshold);
+        solver.setFunction("max", Math::max);
+        solver.setFunction("atan2", Math::atan2);
+        solver.setFunction("sum3", 3, (arguments) -> arguments[0] + arguments[1] + arguments[2]);
+        return solver;
+    }
+
+    @Test
+    @DisplayName("Тест функций нескольких аргументов в интерпретаторе, сгенерированном классе и пакетном вычислении")
+    void multipleArguments() throws ExpressionException {
+        ExpressionSolver interpreted = solver(0);
+        ExpressionSolver jitted = solver(1);
+        String[] expressions = {
+                "max(x, 2) + max(-x, -2)",
+                "atan2(x, 1 + x) * max(x, atan2(x, 1 + x))",
+                "sum3(x, -x * 2, max(x ^ 2, sum3(1, 2, 3)))",
+                "max(sum3(x, x, x), sum3(x, x, x) + 1)"
+        };
+        double[] xs = {0.5, 1.75, 3};
+        for (String expression : expressions) {
+            CompiledExpression compiled = interpreted.compile(expression);
+            CompiledExpression generated = jitted.compile(expression);
+            double[] output = new double[xs.length];
+            compiled.evaluateBatch(new BatchInput().bind("x", xs), output);
+            for (int i = 0; i < xs.length; i++) {
+                interpreted.setVariable("x", xs[i]);
+                jitted.setVariable("x", xs[i]);
+                double expected = compiled.evaluate();
+                Assertions.assertEquals(expected, generated.evaluate(), expression);
+                Assertions.assertEquals(expected, output[i], expression);
+            }
+            Assertions.assertTrue(generated.isJitCompiled(), expression);
+        }
+        interpreted.setVariable("x", 3.0);
+        Assertions.assertEquals(3 - 6 + Math.max(9, 6), interpreted.evaluate("sum3(x, -x * 2, max(x ^ 2, sum3(1, 2, 3)))"));
+    }
+
+    @Test
+    @DisplayName("Тест ошибок в количестве и записи аргументов")
+    void argumentErrors() {
+        ExpressionSolver solver = solver(0);
+        ExpressionException arity = Assertions.assertThrows(ExpressionException.class, () -> solver.evaluate("1 + max(1)"));
+        Assertions.assertEquals("Неверное количество аргументов функции max: ожидается 2, получено 1 (позиция 5)", arity.getMessage());
+        Assertions.assertEquals(ExpressionException.Reason.SYNTAX, arity.getReason());
+        Assertions.assertThrows(ExpressionException.class, () -> solver.evaluate("sin(1, 2)"));
+        Assertions.assertThrows(ExpressionException.class, () -> solver.evaluate("sum3(1, 2)"));
+        Assertions.assertEquals(8, Assertions.assertThrows(ExpressionException.class, () -> solver.evaluate("max(1, )")).getColumn());
+        Assertions.assertEquals(5, Assertions.assertThrows(ExpressionException.class, () -> solver.evaluate("max(, 1)")).getColumn());
+        Assertions.assertEquals(2, Assertions.assertThrows(ExpressionException.class, () -> solver.evaluate("1, 2")).getColumn());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> solver.setFunction("none", 0, (arguments) -> 0));
+    }
+}
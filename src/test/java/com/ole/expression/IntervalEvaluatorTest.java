@@ -0,0 +1,159 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+class IntervalEvaluatorTest {
+
+    @Test
+    @DisplayName("Тест: оценка содержит результаты вычислений в случайных точках промежутков")
+    void containsSamples() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setFunction("hypot", Math::hypot);
+        solver.setVariable("x", 0.0);
+        solver.setVariable("y", 0.0);
+        solver.setVariable("k", 3.0);
+        String[] expressions = {
+                "x * x - 2 * x * y + y / k",
+                "sin(x) * cos(y) + tan(x / 4)",
+                "x ^ 2 + y ^ 0.5 - k ^ x",
+                "log(y + 1) - log10(x * x + 1) + x / (y + 2)",
+                "(x + y) * (x - y) / (x * y + 100) + hypot(k, k)",
+                "cos(x * 10) - sin(y * 3 + PI) * E"
+        };
+        Random random = new Random(7);
+        for (String source : expressions) {
+            CompiledExpression expression = solver.compile(source);
+            for (int round = 0; round < 50; round++) {
+                Interval x = interval(random, -10, 10);
+                Interval y = interval(random, 0, 10);
+                IntervalResult result = expression.evaluateRange(Map.of("x", x, "y", y));
+                for (int i = 0; i < 200; i++) {
+                    solver.setVariable("x", sample(random, x));
+                    solver.setVariable("y", sample(random, y));
+                    double value;
+                    try {
+                        value = expression.evaluate();
+                    } catch (ExpressionException ex) {
+                        Assertions.assertTrue(result.mayFail(), source);
+                        continue;
+                    }
+                    Assertions.assertNotNull(result.bounds(), source);
+                    Assertions.assertTrue(result.bounds().contains(value), source + ": " + value + " вне " + result.bounds());
+                }
+            }
+        }
+    }
+
+    private static Interval interval(Random random, double min, double max) {
+        double a = min + random.nextDouble() * (max - min);
+        double b = min + random.nextDouble() * (max - min);
+        return new Interval(Math.min(a, b), Math.max(a, b));
+    }
+
+    private static double sample(Random random, Interval interval) {
+        int choice = random.nextInt(10);
+        if (choice == 0)
+            return interval.min();
+        if (choice == 1)
+            return interval.max();
+        return Math.min(interval.max(), interval.min() + random.nextDouble() * (interval.max() - interval.min()));
+    }
+
+    @Test
+    @DisplayName("Тест признака возможной ошибки")
+    void mayFail() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("x", 1.0);
+        Map<String, Interval> positive = Map.of("x", new Interval(1, 2));
+        Map<String, Interval> withZero = Map.of("x", new Interval(-1, 2));
+
+        IntervalResult result = solver.compile("1 / x").evaluateRange(positive);
+        Assertions.assertFalse(result.mayFail());
+        Assertions.assertEquals(new Interval(0.5, 1), result.bounds());
+        result = solver.compile("1 / x").evaluateRange(withZero);
+        Assertions.assertTrue(result.mayFail());
+        Assertions.assertEquals(new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY), result.bounds());
+
+        Assertions.assertTrue(solver.compile("x ^ 0.5").evaluateRange(withZero).mayFail());
+        Assertions.assertFalse(solver.compile("x ^ 0.5").evaluateRange(positive).mayFail());
+        Assertions.assertTrue(solver.compile("log(x)").evaluateRange(withZero).mayFail());
+        Assertions.assertFalse(solver.compile("log(x) + sin(x)").evaluateRange(positive).mayFail());
+
+        //переменная без промежутка берётся из решателя
+        result = solver.compile("x + y").evaluateRange(Map.of("y", new Interval(2, 3)));
+        Assertions.assertEquals(new Interval(3, 4), result.bounds());
+        Assertions.assertThrows(ExpressionException.class, () -> solver.compile("x + z").evaluateRange(Map.of()));
+    }
+
+    @Test
+    @DisplayName("Тест выражений, вычисление которых всегда завершается ошибкой")
+    void alwaysFails() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("x", 1.0);
+        Map<String, Interval> negative = Map.of("x", new Interval(-3, -1));
+        for (String source : new String[]{"1 / (x * 0)", "x ^ 0.5", "log(x) + 1", "sin(log10(x))"}) {
+            IntervalResult result = solver.compile(source).evaluateRange(negative);
+            Assertions.assertTrue(result.alwaysFails(), source);
+            Assertions.assertTrue(result.mayFail(), source);
+        }
+        Assertions.assertFalse(solver.compile("x * x").evaluateRange(negative).alwaysFails());
+    }
+
+    @Test
+    @DisplayName("Тест отбора блоков строк по оценке значений")
+    void blockPruning() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("price", 0.0);
+        solver.setVariable("count", 0.0);
+        CompiledExpression total = solver.compile("price * count");
+        int rows = 4096;
+        int block = 256;
+        double[] price = new double[rows];
+        double[] count = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            price[i] = i < rows / 2 ? 1 + i % 10 : 100 + i % 10;
+            count[i] = 1 + i % 5;
+        }
+        int matches = 0;
+        int skipped = 0;
+        for (int from = 0; from < rows; from += block) {
+            IntervalResult result = total.evaluateRange(Map.of(
+                    "price", Interval.of(price, from, from + block),
+                    "count", Interval.of(count, from, from + block)));
+            if (!result.mayFail() && result.bounds().max() <= 500) {
+                skipped++;
+                continue;
+            }
+            for (int i = from; i < from + block; i++) {
+                solver.setVariable("price", price[i]);
+                solver.setVariable("count", count[i]);
+                if (total.evaluate() > 500)
+                    matches++;
+            }
+        }
+        Assertions.assertEquals(rows / block / 2, skipped);
+        int expected = 0;
+        for (int i = 0; i < rows; i++)
+            if (price[i] * count[i] > 500)
+                expected++;
+        Assertions.assertEquals(expected, matches);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Interval.of(price, 3, 3));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Interval(2, 1));
+    }
+
+    @Test
+    @DisplayName("Тест оценки очень длинного выражения")
+    void longExpression() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        CompiledExpression expression = solver.compile("x" + " + x".repeat(99_999));
+        IntervalResult result = expression.evaluateRange(Map.of("x", new Interval(-1, 2)));
+        Assertions.assertFalse(result.mayFail());
+        Assertions.assertEquals(new Interval(-100_000, 200_000), result.bounds());
+    }
+}
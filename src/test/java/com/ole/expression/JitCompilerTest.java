@@ -0,0 +1,94 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class JitCompilerTest {
+
+    @Test
+    @DisplayName("Тест совпадения результатов интерпретатора и сгенерированного класса")
+    void sameResults() throws ExpressionException {
+        ExpressionSolver interpreted = new ExpressionSolver();
+        ExpressionSolver jitted = new ExpressionSolver();
+        jitted.setJitThreshold(1);
+        for (ExpressionSolver solver : new ExpressionSolver[]{interpreted, jitted}) {
+            solver.setFunction("triple", (a) -> a * 3);
+            solver.setFunction("max", Math::max);
+            solver.setFunction("sum3", 3, args -> args[0] + args[1] * 2 + args[2] * 3);
+            solver.setVariable("x", 0.75);
+            //переменная с большим номером ячейки
+            for (int i = 0; i < 40_000; i++)
+                solver.setVariable("v" + i, (double) i);
+        }
+        String[] expressions = {
+                "5^2.1 + 4.65/3 *(7/sin(PI/3))",
+                "-x + triple(x) * cos(x) - log10(x + 1) / tan(x)",
+                "v39999 - v200 * v3 + 0 + 1",
+                "y = triple(triple(x)) ^ 2",
+                "max(x, triple(x)) + sum3(1, x * x, x * x) * sum3(x, -x, max(2, x))"
+        };
+        for (String expression : expressions) {
+            CompiledExpression compiled = jitted.compile(expression);
+            double expected = interpreted.compile(expression).evaluate();
+            Assertions.assertEquals(expected, compiled.evaluate());
+            Assertions.assertTrue(compiled.isJitCompiled(), expression);
+            Assertions.assertEquals(expected, compiled.evaluate());
+        }
+        Assertions.assertEquals(interpreted.evaluate("y"), jitted.evaluate("y"));
+    }
+
+    @Test
+    @DisplayName("Тест ошибок вычисления в сгенерированном классе")
+    void errors() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setJitThreshold(1);
+        solver.setVariable("zero", 0.0);
+        CompiledExpression division = solver.compile("1 / zero");
+        CompiledExpression power = solver.compile("(zero - 2) ^ 0.5");
+        CompiledExpression unknown = solver.compile("unknown + 1");
+        CompiledExpression nan = solver.compile("log(zero - 1)");
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertThrows(ExpressionException.class, division::evaluate);
+            Assertions.assertThrows(ExpressionException.class, power::evaluate);
+            Assertions.assertThrows(ExpressionException.class, unknown::evaluate);
+            Assertions.assertThrows(ExpressionException.class, nan::evaluate);
+        }
+        Assertions.assertTrue(division.isJitCompiled());
+        solver.setVariable("unknown", 2.0);
+        Assertions.assertEquals(3.0, unknown.evaluate());
+    }
+
+    @Test
+    @DisplayName("Тест порога компиляции в байткод")
+    void threshold() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        Assertions.assertFalse(solver.compile("1 + 2").isJitCompiled());
+        solver.setJitThreshold(10);
+        CompiledExpression expression = solver.compile("1 + 2");
+        for (int i = 0; i < 9; i++)
+            expression.evaluate();
+        Assertions.assertFalse(expression.isJitCompiled());
+        expression.evaluate();
+        Assertions.assertTrue(expression.isJitCompiled());
+        Assertions.assertEquals(3.0, expression.evaluate());
+    }
+
+    @Test
+    @DisplayName("Тест компиляции длинных выражений")
+    void longExpressions() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("x", 0.5);
+        solver.setJitThreshold(1);
+        CompiledExpression medium = solver.compile("x" + " + x".repeat(4_999));
+        Assertions.assertEquals(2_500.0, medium.evaluate());
+        Assertions.assertTrue(medium.isJitCompiled());
+
+        //код метода длиннее 64 КБ: выражение остаётся в стековой программе
+        CompiledExpression deep = solver.compile("x" + " + x".repeat(99_999));
+        Assertions.assertEquals(50_000.0, deep.evaluate());
+        Assertions.assertFalse(deep.isJitCompiled());
+        Assertions.assertEquals(50_000.0, deep.evaluate());
+    }
+}
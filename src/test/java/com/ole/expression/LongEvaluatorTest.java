@@ -0,0 +1,62 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class LongEvaluatorTest {
+
+    @Test
+    @DisplayName("Тест целочисленного вычисления")
+    void values() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setFunction("max", Math::max);
+        solver.setVariable("count", 3_000_000_000.0);
+        solver.setVariable("step", 7.0);
+        Assertions.assertEquals(21_000_000_007L, solver.compile("count * step + 7").evaluateLong());
+        Assertions.assertEquals(-3_000_000_000L, solver.compile("-count + (step - step) / 5").evaluateLong());
+        Assertions.assertEquals(1L << 62, solver.compile("2 ^ 62").evaluateLong());
+        Assertions.assertEquals(Long.MAX_VALUE, solver.compile("(2 ^ 62 - 1) * 2 + 1").evaluateLong());
+        Assertions.assertEquals(4, solver.compile("max(step, 4) - 3 + 0 ^ 0 - 1 ^ (-5)").evaluateLong());
+        Assertions.assertEquals(12, solver.compile("total = 84 / step").evaluateLong());
+        //присваивание не выполняется
+        Assertions.assertThrows(ExpressionException.class, () -> solver.evaluate("total"));
+    }
+
+    @Test
+    @DisplayName("Тест переполнения и дробных значений")
+    void errors() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("half", 0.5);
+        solver.setVariable("big", 0x1p62);
+        assertReason(Reason.OVERFLOW, solver.compile("big * 2"));
+        assertReason(Reason.OVERFLOW, solver.compile("2 ^ 63"));
+        assertReason(Reason.OVERFLOW, solver.compile("-big - big - 1"));
+        assertReason(Reason.OVERFLOW, solver.compile("9007199254740994 + 1"));
+        assertReason(Reason.INEXACT, solver.compile("7 / 2"));
+        assertReason(Reason.INEXACT, solver.compile("2 ^ (-1)"));
+        assertReason(Reason.INEXACT, solver.compile("half + 1"));
+        assertReason(Reason.INEXACT, solver.compile("PI"));
+        assertReason(Reason.INEXACT, solver.compile("sin(1)"));
+        assertReason(Reason.DIVISION_BY_ZERO, solver.compile("1 / (big * 0)"));
+        assertReason(Reason.NEGATIVE_BASE, solver.compile("(big - big - 2) ^ 2"));
+        assertReason(Reason.UNKNOWN_VARIABLE, solver.compile("unknown + 1"));
+        //в double то же выражение вычисляется с округлением
+        Assertions.assertEquals(0x1p63, solver.compile("big * 2").evaluate());
+    }
+
+    @Test
+    @DisplayName("Тест целочисленного вычисления очень длинного выражения")
+    void longExpression() throws ExpressionException {
+        ExpressionSolver solver = new ExpressionSolver();
+        solver.setVariable("count", 3_000_000_000.0);
+        Assertions.assertEquals(300_000_000_000_000L, solver.compile("count" + " + count".repeat(99_999)).evaluateLong());
+    }
+
+    private static void assertReason(Reason reason, CompiledExpression expression) {
+        ExpressionException ex = Assertions.assertThrows(ExpressionException.class, expression::evaluateLong, expression.getSource());
+        Assertions.assertEquals(reason, ex.getReason(), expression.getSource());
+    }
+}
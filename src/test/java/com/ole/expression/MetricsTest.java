@@ -0,0 +1,91 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import com.ole.expression.exceptions.ExpressionException.Reason;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+class MetricsTest {
+
+    @Test
+    @DisplayName("Показатели разбора, вычисления, функций и ошибок")
+    void collectMetrics() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setVariable("x", 1.0);
+        expressionSolver.evaluate("sin(x)");
+        Assertions.assertEquals(0, expressionSolver.getMetrics().evaluate().count());
+
+        expressionSolver.setMetricsEnabled(true);
+        CompiledExpression expression = expressionSolver.compile("sin(x) * sin(x) + cos(x)");
+        for (int i = 0; i < 10; i++)
+            expression.evaluate();
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluate("1 / (x - 1)"));
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluate("2 +"));
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluate("y"));
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluateScript(List.of("a = b", "b = a")));
+
+        MetricsSnapshot metrics = expressionSolver.getMetrics();
+        Assertions.assertTrue(metrics.enabled());
+        Assertions.assertEquals(10, metrics.evaluate().count());
+        Assertions.assertTrue(metrics.evaluate().meanNanos() > 0);
+        Assertions.assertTrue(metrics.evaluate().percentileNanos(0.99) >= metrics.evaluate().percentileNanos(0.5));
+        //sin(x) повторяется и вычисляется один раз
+        Assertions.assertEquals(Map.of("sin", 10L, "cos", 10L), metrics.functionCalls());
+        Assertions.assertEquals(Map.of(Reason.DIVISION_BY_ZERO, 1L, Reason.SYNTAX, 1L,
+                Reason.UNKNOWN_VARIABLE, 1L, Reason.DEPENDENCY_CYCLE, 1L), metrics.errors());
+        Assertions.assertEquals(4, metrics.errorCount());
+        Assertions.assertEquals(5, metrics.parse().count());
+
+        expressionSolver.resetMetrics();
+        Assertions.assertEquals(0, expressionSolver.getMetrics().evaluate().count());
+        Assertions.assertEquals(0, expressionSolver.getMetrics().errorCount());
+    }
+
+    @Test
+    @DisplayName("Показатели пакетного вычисления")
+    void batchMetrics() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setMetricsEnabled(true);
+        CompiledExpression expression = expressionSolver.compile("log(1 / x)");
+        BatchResult result = expression.evaluateBatch(new BatchInput().bind("x", new double[]{1, 0, 2}), new double[3]);
+
+        MetricsSnapshot metrics = expressionSolver.getMetrics();
+        Assertions.assertEquals(1, result.getErrors().size());
+        Assertions.assertEquals(3, metrics.batchRows());
+        Assertions.assertEquals(Map.of("log", 3L), metrics.functionCalls());
+        Assertions.assertEquals(Map.of(Reason.DIVISION_BY_ZERO, 1L), metrics.errors());
+    }
+
+    @Test
+    @DisplayName("Показатели доступны через JMX")
+    void jmx() throws Exception {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        ObjectName name = expressionSolver.registerMetrics("metrics-test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.setAttribute(name, new javax.management.Attribute("Enabled", true));
+            Assertions.assertTrue(expressionSolver.isMetricsEnabled());
+            expressionSolver.setVariable("x", 0.0);
+            expressionSolver.evaluate("cos(x)");
+            expressionSolver.evaluate("cos(x)");
+
+            Assertions.assertEquals(2L, server.getAttribute(name, "EvaluateCount"));
+            Assertions.assertEquals(1L, server.getAttribute(name, "CacheHits"));
+            TabularData calls = (TabularData) server.getAttribute(name, "FunctionCalls");
+            Assertions.assertEquals(2L, calls.get(new Object[]{"cos"}).get("value"));
+
+            server.invoke(name, "reset", null, null);
+            Assertions.assertEquals(0L, server.getAttribute(name, "EvaluateCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class OffHeapExpressionSolverTest {
+
+    @Test
+    @DisplayName("Тест совпадения результатов с обычным решателем на большом количестве переменных")
+    void sameResults() throws ExpressionException {
+        ExpressionSolver heap = new ExpressionSolver();
+        ExpressionSolver offHeap = new OffHeapExpressionSolver();
+        offHeap.setJitThreshold(2);
+        int count = 200_000;
+        for (ExpressionSolver solver : new ExpressionSolver[]{heap, offHeap}) {
+            for (int i = 0; i < count; i++)
+                Assertions.assertTrue(solver.setVariable("v" + i, i * 0.5));
+            solver.setVariable("nan", Double.NaN);
+        }
+        String[] expressions = {
+                "v0 + v199999 * v777 - v123456 / (v2 + 1)",
+                "w = v1000 ^ 2 + cos(v1000) * v3 ^ 0.5",
+                "w * v31 + v31"
+        };
+        for (String expression : expressions)
+            for (int i = 0; i < 3; i++)
+                Assertions.assertEquals(heap.evaluate(expression), offHeap.evaluate(expression), expression);
+
+        Assertions.assertArrayEquals(heap.getVariables(), offHeap.getVariables());
+        Assertions.assertEquals(10, heap.getVariables(0, 10).variables().size());
+        Assertions.assertThrows(ExpressionException.class, () -> offHeap.evaluate("undefined + 1"));
+        Assertions.assertThrows(ExpressionException.class, () -> offHeap.evaluate("nan + 1"));
+        Assertions.assertTrue(offHeap.setVariable("undefined", 2.0));
+        Assertions.assertEquals(3.0, offHeap.evaluate("undefined + 1"));
+    }
+
+    @Test
+    @DisplayName("Тест постраничного получения переменных")
+    void paging() throws ExpressionException {
+        ExpressionSolver solver = new OffHeapExpressionSolver(4);
+        for (int i = 0; i < 25; i++)
+            solver.setVariable("x" + i, (double) i);
+        //ячейка без значения не попадает в список
+        solver.compile("empty + 1");
+
+        List<String> pages = new ArrayList<>();
+        int requests = 0;
+        for (int cursor = 0; cursor >= 0; requests++) {
+            VariablePage page = solver.getVariables(cursor, 10);
+            pages.addAll(page.variables());
+            cursor = page.next();
+        }
+        Assertions.assertEquals(Arrays.asList(solver.getVariables()), pages);
+        Assertions.assertEquals(25, pages.size());
+        Assertions.assertEquals(3, requests);
+
+        VariablePage first = solver.getVariables(0, 20);
+        Assertions.assertTrue(first.hasNext());
+        VariablePage second = solver.getVariables(first.next(), 2);
+        Assertions.assertEquals(List.of("x20 : 20.0", "x21 : 21.0"), second.variables());
+        //переменная, добавленная во время обхода, попадает в конец
+        solver.setVariable("late", 1.0);
+        VariablePage last = solver.getVariables(second.next(), 10);
+        Assertions.assertEquals(List.of("x22 : 22.0", "x23 : 23.0", "x24 : 24.0", "late : 1.0"), last.variables());
+        Assertions.assertFalse(last.hasNext());
+        Assertions.assertEquals(0, solver.getVariables(1_000, 10).variables().size());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> solver.getVariables(-1, 10));
+    }
+}
@@ -0,0 +1,100 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class OptimizerTest {
+
+    @Test
+    @DisplayName("Тест свёртки констант")
+    void constantFolding() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        CompiledExpression expression = expressionSolver.compile("5 ^ 2 * tan(PI / 3) + x");
+        Node.Binary root = (Node.Binary) expression.root();
+        Assertions.assertEquals(new Node.Literal(Math.pow(5, 2) * Math.tan(Math.PI / 3)), root.left());
+        Assertions.assertInstanceOf(Node.Variable.class, root.right());
+
+        expressionSolver.setVariable("x", 1.5);
+        Assertions.assertEquals(Math.pow(5, 2) * Math.tan(Math.PI / 3) + 1.5, expression.evaluate());
+    }
+
+    @Test
+    @DisplayName("Тест тождественных преобразований")
+    void identities() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        Node x = expressionSolver.compile("x").root();
+        for (String source : new String[]{"x * 1", "1 * x", "x / 1", "x - 0", "-(-x)", "(x * (2 - 1)) / (3 - 2)"})
+            Assertions.assertEquals(x, expressionSolver.compile(source).root(), source);
+        Assertions.assertEquals(expressionSolver.compile("x - y").root(), expressionSolver.compile("x + (-y)").root());
+        //x + 0 и x ^ 1 не упрощаются: -0 + 0 = +0, а отрицательное основание должно давать ошибку
+        Assertions.assertNotEquals(x, expressionSolver.compile("x + 0").root());
+        Assertions.assertNotEquals(x, expressionSolver.compile("x ^ 1").root());
+
+        expressionSolver.setVariable("x", -0.0);
+        Assertions.assertEquals(-0.0, expressionSolver.evaluate("x * 1"));
+        Assertions.assertEquals(0.0, expressionSolver.evaluate("x + 0"));
+        expressionSolver.setVariable("x", -2.0);
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluate("x ^ 1"));
+    }
+
+    @Test
+    @DisplayName("Тест ошибок при свёртке констант")
+    void compileTimeErrors() {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        ExpressionException division = Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.compile("x + 1 / (2 - 2)"));
+        Assertions.assertEquals("деление на ноль", division.getMessage());
+        ExpressionException power = Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.compile("x * (0 - 8) ^ (1 / 3)"));
+        Assertions.assertEquals("возведение отрицательного числа в степень", power.getMessage());
+    }
+
+    @Test
+    @DisplayName("Тест общих подвыражений")
+    void commonSubexpressions() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        int[] calls = new int[1];
+        expressionSolver.setFunction("counted", (a) -> {
+            calls[0]++;
+            return a + 1;
+        });
+        expressionSolver.setVariable("x", 0.3);
+        expressionSolver.setVariable("y", 2.0);
+        String source = "sin(x * y) / (1 + sin(x * y)) + counted(x) * counted(x)";
+        double expected = Math.sin(0.6) / (1 + Math.sin(0.6)) + 1.3 * 1.3;
+
+        CompiledExpression expression = expressionSolver.compile(source);
+        //sin(x * y) вычисляется один раз, а пользовательская функция вызывается при каждом обращении
+        Assertions.assertEquals(1, expression.program().temporaries);
+        Assertions.assertEquals(expected, expression.evaluate());
+        Assertions.assertEquals(2, calls[0]);
+
+        double[] output = new double[3];
+        BatchResult result = expression.evaluateBatch(new BatchInput().bind("x", new double[]{0.3, 0.3, 0.3}), output);
+        Assertions.assertFalse(result.hasErrors());
+        Assertions.assertArrayEquals(new double[]{expected, expected, expected}, output);
+
+        expressionSolver.setJitThreshold(1);
+        CompiledExpression jitted = expressionSolver.compile(source);
+        Assertions.assertEquals(expected, jitted.evaluate());
+        Assertions.assertTrue(jitted.isJitCompiled());
+        calls[0] = 0;
+        Assertions.assertEquals(expected, jitted.evaluate());
+        Assertions.assertEquals(2, calls[0]);
+    }
+
+    @Test
+    @DisplayName("Тест оптимизации очень длинного выражения")
+    void deepTree() throws ExpressionException {
+        Node x = new Node.Variable("x", 0);
+        Node root = new Node.Binary('*', x, new Node.Literal(1));
+        for (int i = 1; i < 100_000; i++)
+            root = new Node.Binary('+', root, new Node.Binary('*', x, new Node.Binary('-', new Node.Literal(2), new Node.Literal(1))));
+
+        Node optimized = Optimizer.optimize(root);
+        //от каждого слагаемого x * (2 - 1) остаётся x
+        Assertions.assertEquals(100_000, Node.postorder(optimized).size());
+        Assertions.assertSame(x, ((Node.Binary) optimized).right());
+        Assertions.assertTrue(Optimizer.sharedNodes(optimized).isEmpty());
+    }
+}
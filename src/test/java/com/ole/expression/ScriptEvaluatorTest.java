@@ -0,0 +1,80 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+class ScriptEvaluatorTest {
+
+    @Test
+    @DisplayName("Сценарий вычисляется в порядке зависимостей")
+    void evaluateInDependencyOrder() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        expressionSolver.setVariable("x", 3.0);
+        Map<String, Double> result = expressionSolver.evaluateScript(List.of(
+                "c = a + b",
+                "",
+                "a = x * 2",
+                "b = a ^ 2 + sin(0)",
+                "d = 10"));
+
+        Assertions.assertEquals(List.of("c", "a", "b", "d"), List.copyOf(result.keySet()));
+        Assertions.assertEquals(42, result.get("c"));
+        Assertions.assertEquals(36, result.get("b"));
+        Assertions.assertEquals(42, expressionSolver.evaluate("c"));
+        Assertions.assertEquals(10, expressionSolver.evaluate("d"));
+    }
+
+    @Test
+    @DisplayName("Широкий сценарий параллельно")
+    void evaluateWideScriptInParallel() throws ExpressionException {
+        ConcurrentExpressionSolver expressionSolver = new ConcurrentExpressionSolver();
+        List<String> script = new ArrayList<>();
+        script.add("base = 2");
+        for (int i = 0; i < 1000; i++)
+            script.add("v" + i + " = base * " + i);
+        StringBuilder sum = new StringBuilder("total = 0");
+        for (int i = 0; i < 1000; i++)
+            sum.append(" + v").append(i);
+        script.add(sum.toString());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Map<String, Double> result = expressionSolver.evaluateScript(script, pool);
+            Assertions.assertEquals(1002, result.size());
+            Assertions.assertEquals(999 * 1000, result.get("total"));
+            Assertions.assertEquals(2 * 500, expressionSolver.evaluate("v500"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Ошибки сценария")
+    void scriptErrors() throws ExpressionException {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+
+        var cycle = Assertions.assertThrows(ExpressionException.class,
+                () -> expressionSolver.evaluateScript(List.of("x = 1", "a = b + x", "b = c * 2", "c = a")));
+        Assertions.assertEquals("Циклическая зависимость переменных: a -> b -> c -> a", cycle.getMessage());
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluateScript(List.of("a = a + 1")));
+
+        var duplicate = Assertions.assertThrows(ExpressionException.class,
+                () -> expressionSolver.evaluateScript(List.of("a = 1", "a = 2")));
+        Assertions.assertEquals("Переменная присваивается в сценарии более одного раза: a", duplicate.getMessage());
+
+        Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.evaluateScript(List.of("a = 1", "a + 2")));
+
+        //первый уровень записывается, ошибка второго уровня прерывает сценарий
+        var division = Assertions.assertThrows(ExpressionException.class,
+                () -> expressionSolver.evaluateScript(List.of("p = 0", "q = 1 / p")));
+        Assertions.assertEquals("деление на ноль", division.getMessage());
+        Assertions.assertEquals(0, expressionSolver.evaluate("p"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.ole.expression;
+
+import com.ole.expression.exceptions.ExpressionException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class TokensTest {
+
+    @Test
+    @DisplayName("Токены с позициями в исходной строке")
+    void scan() {
+        String source = "a = sin(x1)*2.5 - $";
+        Tokens tokens = Tokens.scan(source, 4, source.length());
+
+        Assertions.assertEquals(8, tokens.size());
+        Assertions.assertEquals(Tokens.NAME, tokens.kind(0));
+        Assertions.assertEquals("sin", tokens.text(0));
+        Assertions.assertEquals(4, tokens.start(0));
+        Assertions.assertTrue(tokens.isOperator(1, '('));
+        Assertions.assertEquals("x1", tokens.text(2));
+        Assertions.assertEquals(Tokens.NUMBER, tokens.kind(5));
+        Assertions.assertEquals(2.5, tokens.value(5));
+        Assertions.assertEquals(Tokens.UNKNOWN, tokens.kind(7));
+        Assertions.assertEquals(18, tokens.start(7));
+    }
+
+    @Test
+    @DisplayName("Разбор чисел совпадает с Double.parseDouble")
+    void parseNumbers() {
+        String[] numbers = {"0", "7", "1.", "0.1", "2.675", "0.30000000000000004", "9007199254740993",
+                "123456789012345678901234567890", "3.14159265358979323846", "0.0000000000000000000000001", "000123.4500"};
+        for (String number : numbers)
+            Assertions.assertEquals(Double.parseDouble(number), Tokens.parseNumber(number, 0, number.length()), number);
+        Assertions.assertTrue(Double.isNaN(Tokens.parseNumber("1.2.3", 0, 5)));
+    }
+
+    @Test
+    @DisplayName("Таблица имён возвращает один экземпляр строки")
+    void symbolTable() {
+        SymbolTable symbols = new SymbolTable();
+        String first = symbols.intern("x + value", 4, 9);
+        Assertions.assertEquals("value", first);
+        Assertions.assertSame(first, symbols.intern(new StringBuilder("value"), 0, 5));
+        for (int i = 0; i < 1000; i++)
+            symbols.intern("v" + i, 0, ("v" + i).length());
+        Assertions.assertSame(first, symbols.intern("value", 0, 5));
+        Assertions.assertEquals("v999", symbols.intern("v999", 0, 4));
+    }
+
+    @Test
+    @DisplayName("Позиция ошибки в сообщении")
+    void errorColumns() {
+        ExpressionSolver expressionSolver = new ExpressionSolver();
+        assertColumn(expressionSolver, "a = 2 + $", "неизвестный токен $ (позиция 9)", 9);
+        assertColumn(expressionSolver, "1 + 1.2.3", "неизвестный токен 1.2.3 (позиция 5)", 5);
+        assertColumn(expressionSolver, "(1 + 2)) * 3", "Несовпадение открывающих и закрывающих скобок (позиция 8)", 8);
+        assertColumn(expressionSolver, "(1 + (2) * 3", "Несовпадение открывающих и закрывающих скобок (позиция 1)", 1);
+        assertColumn(expressionSolver, "5 + * 3", "Неправильное расположение операторов (позиция 3)", 3);
+        assertColumn(expressionSolver, "2 3", "Неправильное расположение операторов (позиция 3)", 3);
+    }
+
+    private static void assertColumn(ExpressionSolver expressionSolver, String expression, String message, int column) {
+        ExpressionException ex = Assertions.assertThrows(ExpressionException.class, () -> expressionSolver.compile(expression));
+        Assertions.assertEquals(message, ex.getMessage());
+        Assertions.assertEquals(column, ex.getColumn());
+    }
+}
@@ -0,0 +1,154 @@
+package com.ole.server;
+
+import com.ole.expression.ExpressionSolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class EvaluationServerTest {
+
+    private EvaluationServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new EvaluationServer(new InetSocketAddress("localhost", 0), EvaluationServer::newSolver);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.close();
+    }
+
+    @Test
+    @DisplayName("Ответы на строки, отправленные без ожидания ответов")
+    void pipelinedLines() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            String request = "a = 2 * 3\r\n\na + 1\n1 / 0\nb\nround(PI)\n";
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.UTF_8));
+            socket.shutdownOutput();
+            Assertions.assertEquals(List.of("OK 6.0", "", "OK 7.0", "ERR DIVISION_BY_ZERO деление на ноль",
+                    "ERR UNKNOWN_VARIABLE неизвестный токен b", "OK 3.0"), readAll(socket));
+        }
+    }
+
+    @Test
+    @DisplayName("Переменные разных соединений не пересекаются")
+    void isolatedSessions() throws IOException {
+        try (Socket first = new Socket("localhost", server.getPort());
+             Socket second = new Socket("localhost", server.getPort())) {
+            BufferedReader firstReader = reader(first);
+            BufferedReader secondReader = reader(second);
+            send(first, "x = 1");
+            send(second, "x = 2");
+            Assertions.assertEquals("OK 1.0", firstReader.readLine());
+            Assertions.assertEquals("OK 2.0", secondReader.readLine());
+            send(first, "x * 10");
+            Assertions.assertEquals("OK 10.0", firstReader.readLine());
+            send(second, "x * 10");
+            Assertions.assertEquals("OK 20.0", secondReader.readLine());
+        }
+        try (Socket third = new Socket("localhost", server.getPort())) {
+            send(third, "x");
+            Assertions.assertTrue(reader(third).readLine().startsWith("ERR UNKNOWN_VARIABLE"));
+        }
+    }
+
+    @Test
+    @DisplayName("Большое количество строк и строка в несколько буферов")
+    void manyLines() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            StringBuilder request = new StringBuilder();
+            request.append(" ".repeat(100_000)).append("2 * 21\n");
+            for (int i = 0; i < 20_000; i++)
+                request.append("y = ").append(i).append(" + 0.5\n");
+            Thread writer = new Thread(() -> {
+                try {
+                    OutputStream output = socket.getOutputStream();
+                    output.write(request.toString().getBytes(StandardCharsets.UTF_8));
+                    socket.shutdownOutput();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            writer.start();
+            List<String> lines = readAll(socket);
+            Assertions.assertEquals(20_001, lines.size());
+            Assertions.assertEquals("OK 42.0", lines.get(0));
+            Assertions.assertEquals("OK 19999.5", lines.get(20_000));
+        }
+    }
+
+    @Test
+    @DisplayName("Непредвиденные ошибки не останавливают сервер")
+    void unexpectedErrors() throws IOException {
+        AtomicInteger sessions = new AtomicInteger();
+        try (EvaluationServer failing = new EvaluationServer(new InetSocketAddress("localhost", 0), () -> {
+            if (sessions.incrementAndGet() == 2)
+                throw new IllegalStateException("решатель не создан");
+            ExpressionSolver expressionSolver = EvaluationServer.newSolver();
+            expressionSolver.setFunction("fail", a -> {
+                throw new IllegalArgumentException("сбой");
+            });
+            return expressionSolver;
+        })) {
+            failing.start();
+            try (Socket socket = new Socket("localhost", failing.getPort())) {
+                socket.getOutputStream().write("fail(1)\n2 + 2\n".getBytes(StandardCharsets.UTF_8));
+                socket.shutdownOutput();
+                Assertions.assertEquals(List.of("ERR OTHER java.lang.IllegalArgumentException: сбой", "OK 4.0"), readAll(socket));
+            }
+            //соединение, для которого не удалось создать решатель, закрывается
+            try (Socket socket = new Socket("localhost", failing.getPort())) {
+                Assertions.assertEquals(List.of(), readAll(socket));
+            }
+            try (Socket socket = new Socket("localhost", failing.getPort())) {
+                send(socket, "3 * 3");
+                Assertions.assertEquals("OK 9.0", reader(socket).readLine());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Нагрузочный клиент")
+    void loadGenerator() throws Exception {
+        InetSocketAddress address = new InetSocketAddress("localhost", server.getPort());
+        LoadGenerator.Report report = LoadGenerator.run(address, 3, 2_000, 16, "x = 2 * (3 + 4) ^ 2");
+        Assertions.assertEquals(6_000, report.requests());
+        Assertions.assertEquals(0, report.errors());
+        Assertions.assertTrue(report.p50Nanos() <= report.p99Nanos() && report.p99Nanos() <= report.maxNanos());
+        Assertions.assertTrue(report.throughput() > 0);
+
+        Assertions.assertEquals(500, LoadGenerator.run(address, 1, 500, 8, "1 / 0").errors());
+    }
+
+    private static void send(Socket socket, String line) throws IOException {
+        socket.getOutputStream().write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static List<String> readAll(Socket socket) throws IOException {
+        BufferedReader reader = reader(socket);
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null)
+            lines.add(line);
+        return lines;
+    }
+}